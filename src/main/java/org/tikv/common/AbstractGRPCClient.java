@@ -22,6 +22,7 @@ import io.grpc.MethodDescriptor;
 import io.grpc.stub.AbstractStub;
 import io.grpc.stub.ClientCalls;
 import io.grpc.stub.StreamObserver;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Supplier;
 import org.apache.log4j.Logger;
 import org.tikv.common.operation.ErrorHandler;
@@ -30,6 +31,7 @@ import org.tikv.common.policy.RetryPolicy;
 import org.tikv.common.streaming.StreamingResponse;
 import org.tikv.common.util.BackOffer;
 import org.tikv.common.util.ChannelFactory;
+import org.tikv.common.util.CompletableFutureObserver;
 
 public abstract class AbstractGRPCClient<
         BlockingStubT extends AbstractStub<BlockingStubT>, StubT extends AbstractStub<StubT>>
@@ -98,6 +100,37 @@ public abstract class AbstractGRPCClient<
     logger.debug(String.format("leaving %s...", method.getFullMethodName()));
   }
 
+  /**
+   * Issue a unary call without blocking the caller. Only failures raised while issuing the call are
+   * retried here, the response itself (including region errors) is left to the returned future.
+   */
+  protected <ReqT, RespT> CompletableFuture<RespT> callAsyncWithRetry(
+      BackOffer backOffer,
+      MethodDescriptor<ReqT, RespT> method,
+      Supplier<ReqT> requestFactory,
+      ErrorHandler<RespT> handler) {
+    CompletableFutureObserver<RespT, RespT> responseObserver =
+        new CompletableFutureObserver<>(resp -> resp);
+    callAsyncWithRetry(
+        backOffer,
+        method,
+        requestFactory,
+        responseObserver,
+        new ErrorHandler<RespT>() {
+          @Override
+          public boolean handleResponseError(BackOffer backOffer, RespT resp) {
+            // response has not arrived yet when the call is issued
+            return false;
+          }
+
+          @Override
+          public boolean handleRequestError(BackOffer backOffer, Exception e) {
+            return handler.handleRequestError(backOffer, e);
+          }
+        });
+    return responseObserver.getFuture();
+  }
+
   <ReqT, RespT> StreamObserver<ReqT> callBidiStreamingWithRetry(
       BackOffer backOffer,
       MethodDescriptor<ReqT, RespT> method,
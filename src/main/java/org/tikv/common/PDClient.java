@@ -24,6 +24,7 @@ import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.protobuf.ByteString;
 import io.grpc.ManagedChannel;
 import java.net.URI;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
@@ -42,6 +43,7 @@ import org.tikv.common.region.TiRegion;
 import org.tikv.common.util.BackOffer;
 import org.tikv.common.util.ChannelFactory;
 import org.tikv.common.util.FutureObserver;
+import org.tikv.kvproto.Metapb.Peer;
 import org.tikv.kvproto.Metapb.Store;
 import org.tikv.kvproto.PDGrpc;
 import org.tikv.kvproto.PDGrpc.PDBlockingStub;
@@ -77,9 +79,7 @@ public class PDClient extends AbstractGRPCClient<PDBlockingStub, PDStub>
     if (conf.getKvMode() == KVMode.RAW) {
       request = () -> GetRegionRequest.newBuilder().setHeader(header).setRegionKey(key).build();
     } else {
-      CodecDataOutput cdo = new CodecDataOutput();
-      BytesCodec.writeBytes(cdo, key.toByteArray());
-      ByteString encodedKey = cdo.toByteString();
+      ByteString encodedKey = encodeKey(key);
       request =
           () -> GetRegionRequest.newBuilder().setHeader(header).setRegionKey(encodedKey).build();
     }
@@ -157,6 +157,49 @@ public class PDClient extends AbstractGRPCClient<PDBlockingStub, PDStub>
     return responseObserver.getFuture();
   }
 
+  @Override
+  public List<TiRegion> scanRegions(
+      BackOffer backOffer, ByteString startKey, ByteString endKey, int limit) {
+    ScanRegionsRequest.Builder builder =
+        ScanRegionsRequest.newBuilder().setHeader(header).setLimit(limit);
+    if (conf.getKvMode() == KVMode.RAW) {
+      builder.setStartKey(startKey).setEndKey(endKey);
+    } else {
+      builder.setStartKey(encodeKey(startKey));
+      if (!endKey.isEmpty()) {
+        builder.setEndKey(encodeKey(endKey));
+      }
+    }
+    ScanRegionsRequest scanRequest = builder.build();
+    Supplier<ScanRegionsRequest> request = () -> scanRequest;
+    PDErrorHandler<ScanRegionsResponse> handler =
+        new PDErrorHandler<>(
+            r -> r.getHeader().hasError() ? buildFromPdpbError(r.getHeader().getError()) : null,
+            this);
+
+    ScanRegionsResponse resp =
+        callWithRetry(backOffer, PDGrpc.METHOD_SCAN_REGIONS, request, handler);
+    List<TiRegion> regions = new ArrayList<>(resp.getRegionMetasCount());
+    for (int i = 0; i < resp.getRegionMetasCount(); i++) {
+      // leaders are missing for regions PD has no heartbeat from yet
+      Peer leader = i < resp.getLeadersCount() ? resp.getLeaders(i) : null;
+      regions.add(
+          new TiRegion(
+              resp.getRegionMetas(i),
+              leader,
+              conf.getIsolationLevel(),
+              conf.getCommandPriority(),
+              conf.getKvMode()));
+    }
+    return regions;
+  }
+
+  private static ByteString encodeKey(ByteString key) {
+    CodecDataOutput cdo = new CodecDataOutput();
+    BytesCodec.writeBytes(cdo, key.toByteArray());
+    return cdo.toByteString();
+  }
+
   @Override
   public Store getStore(BackOffer backOffer, long storeId) {
     Supplier<GetStoreRequest> request =
@@ -200,6 +243,10 @@ public class PDClient extends AbstractGRPCClient<PDBlockingStub, PDStub>
     return createRaw(conf, channelFactory);
   }
 
+  public long getClusterId() {
+    return header.getClusterId();
+  }
+
   @VisibleForTesting
   RequestHeader getHeader() {
     return header;
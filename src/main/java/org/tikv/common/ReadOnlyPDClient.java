@@ -16,6 +16,7 @@
 package org.tikv.common;
 
 import com.google.protobuf.ByteString;
+import java.util.List;
 import java.util.concurrent.Future;
 import org.tikv.common.meta.TiTimestamp;
 import org.tikv.common.region.TiRegion;
@@ -51,6 +52,17 @@ public interface ReadOnlyPDClient {
 
   Future<TiRegion> getRegionByIDAsync(BackOffer backOffer, long id);
 
+  /**
+   * Get Regions from PD in key order, starting with the one holding startKey
+   *
+   * @param startKey key in bytes of the first region
+   * @param endKey exclusive upper bound in bytes, empty for no bound
+   * @param limit maximum number of regions returned
+   * @return regions overlapping range [startKey, endKey), at most limit of them
+   */
+  List<TiRegion> scanRegions(
+      BackOffer backOffer, ByteString startKey, ByteString endKey, int limit);
+
   /**
    * Get Store by StoreId
    *
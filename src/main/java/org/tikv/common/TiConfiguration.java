@@ -22,6 +22,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.TimeUnit;
+import org.tikv.kvproto.Coprocessor.KeyRange;
 import org.tikv.kvproto.Kvrpcpb.CommandPri;
 import org.tikv.kvproto.Kvrpcpb.IsolationLevel;
 
@@ -46,6 +47,47 @@ public class TiConfiguration implements Serializable {
   private static final String DEF_DB_PREFIX = "";
   private static final KVMode DEF_KV_MODE = KVMode.TXN;
   private static final int DEF_RAW_CLIENT_CONCURRENCY = 200;
+  // threads of the executor shared by the raw clients of a session, idle ones are let go
+  private static final int DEF_RAW_EXECUTOR_THREADS = 200;
+  // number of regions scanned at the same time by a bounded raw scan, 1 disables parallel scan
+  private static final int DEF_RAW_SCAN_CONCURRENCY = 1;
+  // number of batches a raw scan loads ahead of the one being consumed, 0 disables prefetch
+  private static final int DEF_SCAN_PREFETCH_DEPTH = 0;
+  // raw scan batches are sized from observed row sizes and latency within the limits below if set,
+  // otherwise every request asks for scan batch size rows
+  private static final boolean DEF_ADAPTIVE_SCAN_BATCH_SIZE = false;
+  private static final int DEF_MIN_SCAN_BATCH_SIZE = 16;
+  private static final int DEF_MAX_SCAN_BATCH_SIZE = 10240;
+  private static final int DEF_MAX_SCAN_BATCH_BYTES = 4 * 1024 * 1024; // 4 MB
+  private static final int DEF_SCAN_BATCH_TARGET_LATENCY_MS = 100;
+  // keys and values of a raw batch put request are kept below this, and below half the max frame
+  // size, well within the raft entry size limit of TiKV
+  private static final int DEF_RAW_BATCH_PUT_REQUEST_MAX_BYTES = 4 * 1024 * 1024; // 4 MB
+  // concurrent raw puts to a region are gathered for this long and sent as one batch put, 0
+  // disables batching
+  private static final int DEF_RAW_PUT_BATCH_WINDOW_MS = 0;
+  private static final int DEF_RAW_PUT_BATCH_MAX_BYTES = 1024 * 1024; // 1 MB
+  // concurrent raw gets in a region are gathered for this long and sent as one batch get, 0
+  // disables batching
+  private static final int DEF_RAW_GET_BATCH_WINDOW_MS = 0;
+  private static final int DEF_RAW_GET_BATCH_MAX_KEYS = 1024;
+  // a region buffer of RawBulkWriter is flushed once it reaches either size or after the interval
+  private static final int DEF_RAW_BULK_WRITE_FLUSH_BYTES = 1024 * 1024; // 1 MB
+  private static final int DEF_RAW_BULK_WRITE_FLUSH_COUNT = 4096;
+  private static final int DEF_RAW_BULK_WRITE_FLUSH_INTERVAL_MS = 1000;
+  private static final int DEF_RAW_BULK_WRITE_MAX_IN_FLIGHT = 16;
+  // producers of RawBulkWriter block while more bytes are buffered or in flight
+  private static final long DEF_RAW_BULK_WRITE_BUFFER_BYTES = 64 * 1024 * 1024; // 64 MB
+  // regions overlapping these ranges are loaded from PD in the background when a session starts
+  private static final List<KeyRange> DEF_REGION_CACHE_WARM_UP_RANGES = ImmutableList.of();
+  // number of regions loaded per PD request when warming up the region cache
+  private static final int DEF_REGION_CACHE_WARM_UP_BATCH_SIZE = 1024;
+  // file the region cache is saved to when a session closes and loaded from when one starts, null
+  // disables it
+  private static final String DEF_REGION_CACHE_SNAPSHOT_PATH = null;
+  // regions are evicted from a region cache beyond these limits, 0 disables a limit
+  private static final int DEF_REGION_CACHE_MAX_ENTRIES = 0;
+  private static final long DEF_REGION_CACHE_MAX_BYTES = 0;
 
   private int timeout = DEF_TIMEOUT;
   private TimeUnit timeoutUnit = DEF_TIMEOUT_UNIT;
@@ -65,6 +107,29 @@ public class TiConfiguration implements Serializable {
   private String dbPrefix = DEF_DB_PREFIX;
   private KVMode kvMode = DEF_KV_MODE;
   private int rawClientConcurrency = DEF_RAW_CLIENT_CONCURRENCY;
+  private int rawExecutorThreads = DEF_RAW_EXECUTOR_THREADS;
+  private int rawScanConcurrency = DEF_RAW_SCAN_CONCURRENCY;
+  private int scanPrefetchDepth = DEF_SCAN_PREFETCH_DEPTH;
+  private boolean adaptiveScanBatchSize = DEF_ADAPTIVE_SCAN_BATCH_SIZE;
+  private int minScanBatchSize = DEF_MIN_SCAN_BATCH_SIZE;
+  private int maxScanBatchSize = DEF_MAX_SCAN_BATCH_SIZE;
+  private int maxScanBatchBytes = DEF_MAX_SCAN_BATCH_BYTES;
+  private int scanBatchTargetLatencyMs = DEF_SCAN_BATCH_TARGET_LATENCY_MS;
+  private int rawBatchPutRequestMaxBytes = DEF_RAW_BATCH_PUT_REQUEST_MAX_BYTES;
+  private int rawPutBatchWindowMs = DEF_RAW_PUT_BATCH_WINDOW_MS;
+  private int rawPutBatchMaxBytes = DEF_RAW_PUT_BATCH_MAX_BYTES;
+  private int rawGetBatchWindowMs = DEF_RAW_GET_BATCH_WINDOW_MS;
+  private int rawGetBatchMaxKeys = DEF_RAW_GET_BATCH_MAX_KEYS;
+  private int rawBulkWriteFlushBytes = DEF_RAW_BULK_WRITE_FLUSH_BYTES;
+  private int rawBulkWriteFlushCount = DEF_RAW_BULK_WRITE_FLUSH_COUNT;
+  private int rawBulkWriteFlushIntervalMs = DEF_RAW_BULK_WRITE_FLUSH_INTERVAL_MS;
+  private int rawBulkWriteMaxInFlight = DEF_RAW_BULK_WRITE_MAX_IN_FLIGHT;
+  private long rawBulkWriteBufferBytes = DEF_RAW_BULK_WRITE_BUFFER_BYTES;
+  private List<KeyRange> regionCacheWarmUpRanges = DEF_REGION_CACHE_WARM_UP_RANGES;
+  private int regionCacheWarmUpBatchSize = DEF_REGION_CACHE_WARM_UP_BATCH_SIZE;
+  private String regionCacheSnapshotPath = DEF_REGION_CACHE_SNAPSHOT_PATH;
+  private int regionCacheMaxEntries = DEF_REGION_CACHE_MAX_ENTRIES;
+  private long regionCacheMaxBytes = DEF_REGION_CACHE_MAX_BYTES;
 
   public enum KVMode {
     TXN,
@@ -249,4 +314,248 @@ public class TiConfiguration implements Serializable {
   public void setRawClientConcurrency(int rawClientConcurrency) {
     this.rawClientConcurrency = rawClientConcurrency;
   }
+
+  public int getRawExecutorThreads() {
+    return rawExecutorThreads;
+  }
+
+  public void setRawExecutorThreads(int rawExecutorThreads) {
+    if (rawExecutorThreads <= 0) {
+      throw new IllegalArgumentException("Raw executor threads cannot be less than 1");
+    }
+    this.rawExecutorThreads = rawExecutorThreads;
+  }
+
+  public int getRawScanConcurrency() {
+    return rawScanConcurrency;
+  }
+
+  public void setRawScanConcurrency(int rawScanConcurrency) {
+    if (rawScanConcurrency <= 0) {
+      throw new IllegalArgumentException("Raw scan concurrency cannot be less than 1");
+    }
+    this.rawScanConcurrency = rawScanConcurrency;
+  }
+
+  public int getScanPrefetchDepth() {
+    return scanPrefetchDepth;
+  }
+
+  public void setScanPrefetchDepth(int scanPrefetchDepth) {
+    if (scanPrefetchDepth < 0) {
+      throw new IllegalArgumentException("Scan prefetch depth cannot be negative");
+    }
+    this.scanPrefetchDepth = scanPrefetchDepth;
+  }
+
+  public boolean isAdaptiveScanBatchSize() {
+    return adaptiveScanBatchSize;
+  }
+
+  public void setAdaptiveScanBatchSize(boolean adaptiveScanBatchSize) {
+    this.adaptiveScanBatchSize = adaptiveScanBatchSize;
+  }
+
+  public int getMinScanBatchSize() {
+    return minScanBatchSize;
+  }
+
+  public void setMinScanBatchSize(int minScanBatchSize) {
+    if (minScanBatchSize <= 0) {
+      throw new IllegalArgumentException("Min scan batch size cannot be less than 1");
+    }
+    this.minScanBatchSize = minScanBatchSize;
+  }
+
+  public int getMaxScanBatchSize() {
+    return maxScanBatchSize;
+  }
+
+  public void setMaxScanBatchSize(int maxScanBatchSize) {
+    if (maxScanBatchSize <= 0) {
+      throw new IllegalArgumentException("Max scan batch size cannot be less than 1");
+    }
+    this.maxScanBatchSize = maxScanBatchSize;
+  }
+
+  public int getMaxScanBatchBytes() {
+    return maxScanBatchBytes;
+  }
+
+  public void setMaxScanBatchBytes(int maxScanBatchBytes) {
+    if (maxScanBatchBytes <= 0) {
+      throw new IllegalArgumentException("Max scan batch bytes must be positive");
+    }
+    this.maxScanBatchBytes = maxScanBatchBytes;
+  }
+
+  public int getScanBatchTargetLatencyMs() {
+    return scanBatchTargetLatencyMs;
+  }
+
+  public void setScanBatchTargetLatencyMs(int scanBatchTargetLatencyMs) {
+    if (scanBatchTargetLatencyMs <= 0) {
+      throw new IllegalArgumentException("Scan batch target latency must be positive");
+    }
+    this.scanBatchTargetLatencyMs = scanBatchTargetLatencyMs;
+  }
+
+  public int getRawBatchPutRequestMaxBytes() {
+    return rawBatchPutRequestMaxBytes;
+  }
+
+  public void setRawBatchPutRequestMaxBytes(int rawBatchPutRequestMaxBytes) {
+    if (rawBatchPutRequestMaxBytes <= 0) {
+      throw new IllegalArgumentException("Raw batch put request max bytes must be positive");
+    }
+    this.rawBatchPutRequestMaxBytes = rawBatchPutRequestMaxBytes;
+  }
+
+  public int getRawPutBatchWindowMs() {
+    return rawPutBatchWindowMs;
+  }
+
+  public void setRawPutBatchWindowMs(int rawPutBatchWindowMs) {
+    if (rawPutBatchWindowMs < 0) {
+      throw new IllegalArgumentException("Raw put batch window cannot be negative");
+    }
+    this.rawPutBatchWindowMs = rawPutBatchWindowMs;
+  }
+
+  public int getRawPutBatchMaxBytes() {
+    return rawPutBatchMaxBytes;
+  }
+
+  public void setRawPutBatchMaxBytes(int rawPutBatchMaxBytes) {
+    if (rawPutBatchMaxBytes <= 0) {
+      throw new IllegalArgumentException("Raw put batch max bytes must be positive");
+    }
+    this.rawPutBatchMaxBytes = rawPutBatchMaxBytes;
+  }
+
+  public int getRawGetBatchWindowMs() {
+    return rawGetBatchWindowMs;
+  }
+
+  public void setRawGetBatchWindowMs(int rawGetBatchWindowMs) {
+    if (rawGetBatchWindowMs < 0) {
+      throw new IllegalArgumentException("Raw get batch window cannot be negative");
+    }
+    this.rawGetBatchWindowMs = rawGetBatchWindowMs;
+  }
+
+  public int getRawGetBatchMaxKeys() {
+    return rawGetBatchMaxKeys;
+  }
+
+  public void setRawGetBatchMaxKeys(int rawGetBatchMaxKeys) {
+    if (rawGetBatchMaxKeys <= 0) {
+      throw new IllegalArgumentException("Raw get batch max keys must be positive");
+    }
+    this.rawGetBatchMaxKeys = rawGetBatchMaxKeys;
+  }
+
+  public int getRawBulkWriteFlushBytes() {
+    return rawBulkWriteFlushBytes;
+  }
+
+  public void setRawBulkWriteFlushBytes(int rawBulkWriteFlushBytes) {
+    if (rawBulkWriteFlushBytes <= 0) {
+      throw new IllegalArgumentException("Raw bulk write flush bytes must be positive");
+    }
+    this.rawBulkWriteFlushBytes = rawBulkWriteFlushBytes;
+  }
+
+  public int getRawBulkWriteFlushCount() {
+    return rawBulkWriteFlushCount;
+  }
+
+  public void setRawBulkWriteFlushCount(int rawBulkWriteFlushCount) {
+    if (rawBulkWriteFlushCount <= 0) {
+      throw new IllegalArgumentException("Raw bulk write flush count must be positive");
+    }
+    this.rawBulkWriteFlushCount = rawBulkWriteFlushCount;
+  }
+
+  public int getRawBulkWriteFlushIntervalMs() {
+    return rawBulkWriteFlushIntervalMs;
+  }
+
+  public void setRawBulkWriteFlushIntervalMs(int rawBulkWriteFlushIntervalMs) {
+    if (rawBulkWriteFlushIntervalMs <= 0) {
+      throw new IllegalArgumentException("Raw bulk write flush interval must be positive");
+    }
+    this.rawBulkWriteFlushIntervalMs = rawBulkWriteFlushIntervalMs;
+  }
+
+  public int getRawBulkWriteMaxInFlight() {
+    return rawBulkWriteMaxInFlight;
+  }
+
+  public void setRawBulkWriteMaxInFlight(int rawBulkWriteMaxInFlight) {
+    if (rawBulkWriteMaxInFlight <= 0) {
+      throw new IllegalArgumentException("Raw bulk write max in flight cannot be less than 1");
+    }
+    this.rawBulkWriteMaxInFlight = rawBulkWriteMaxInFlight;
+  }
+
+  public long getRawBulkWriteBufferBytes() {
+    return rawBulkWriteBufferBytes;
+  }
+
+  public void setRawBulkWriteBufferBytes(long rawBulkWriteBufferBytes) {
+    if (rawBulkWriteBufferBytes <= 0) {
+      throw new IllegalArgumentException("Raw bulk write buffer bytes must be positive");
+    }
+    this.rawBulkWriteBufferBytes = rawBulkWriteBufferBytes;
+  }
+
+  public List<KeyRange> getRegionCacheWarmUpRanges() {
+    return regionCacheWarmUpRanges;
+  }
+
+  public void setRegionCacheWarmUpRanges(List<KeyRange> regionCacheWarmUpRanges) {
+    this.regionCacheWarmUpRanges = ImmutableList.copyOf(regionCacheWarmUpRanges);
+  }
+
+  public int getRegionCacheWarmUpBatchSize() {
+    return regionCacheWarmUpBatchSize;
+  }
+
+  public void setRegionCacheWarmUpBatchSize(int regionCacheWarmUpBatchSize) {
+    if (regionCacheWarmUpBatchSize <= 0) {
+      throw new IllegalArgumentException("Region cache warm up batch size cannot be less than 1");
+    }
+    this.regionCacheWarmUpBatchSize = regionCacheWarmUpBatchSize;
+  }
+
+  public String getRegionCacheSnapshotPath() {
+    return regionCacheSnapshotPath;
+  }
+
+  public void setRegionCacheSnapshotPath(String regionCacheSnapshotPath) {
+    this.regionCacheSnapshotPath = regionCacheSnapshotPath;
+  }
+
+  public int getRegionCacheMaxEntries() {
+    return regionCacheMaxEntries;
+  }
+
+  public void setRegionCacheMaxEntries(int regionCacheMaxEntries) {
+    if (regionCacheMaxEntries < 0) {
+      throw new IllegalArgumentException("Region cache max entries cannot be negative");
+    }
+    this.regionCacheMaxEntries = regionCacheMaxEntries;
+  }
+
+  public long getRegionCacheMaxBytes() {
+    return regionCacheMaxBytes;
+  }
+
+  public void setRegionCacheMaxBytes(long regionCacheMaxBytes) {
+    if (regionCacheMaxBytes < 0) {
+      throw new IllegalArgumentException("Region cache max bytes cannot be negative");
+    }
+    this.regionCacheMaxBytes = regionCacheMaxBytes;
+  }
 }
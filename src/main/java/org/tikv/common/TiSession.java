@@ -15,26 +15,126 @@
 
 package org.tikv.common;
 
+import static org.tikv.common.codec.KeyUtils.formatBytes;
+
 import com.google.common.annotations.VisibleForTesting;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import org.apache.log4j.Logger;
 import org.tikv.common.region.RegionManager;
 import org.tikv.common.region.RegionStoreClient.RegionStoreClientBuilder;
 import org.tikv.common.util.ChannelFactory;
+import org.tikv.common.util.RawExecutors;
+import org.tikv.kvproto.Coprocessor.KeyRange;
 import org.tikv.raw.RawKVClient;
 
 /**
  * TiSession is the holder for PD Client, Store pdClient and PD Cache All sessions share common
  * region store connection pool but separated PD conn and cache for better concurrency TiSession is
- * thread-safe but it's also recommended to have multiple session avoiding lock contention
+ * thread-safe, raw clients created by a session share its region cache unless asked otherwise
  */
 public class TiSession implements AutoCloseable {
+  private static final Logger logger = Logger.getLogger(TiSession.class);
+  // format version of region cache snapshot files
+  private static final int REGION_CACHE_SNAPSHOT_VERSION = 1;
+
   private final TiConfiguration conf;
   private final PDClient pdClient;
   private final ChannelFactory channelFactory;
+  // region cache shared by the raw clients of this session
+  private final RegionManager regionManager;
+  // executor shared by the raw clients of this session
+  private final ExecutorService rawExecutor;
+  private final boolean ownsRawExecutor;
+  // timers of the raw clients of this session, like batch windows
+  private final ScheduledExecutorService rawScheduler = RawExecutors.createScheduler();
 
   public TiSession(TiConfiguration conf) {
+    this(conf, null);
+  }
+
+  /**
+   * Create a session whose raw clients share rawExecutor, e.g. a fork-join pool or a virtual thread
+   * executor on JDKs supporting them. Each client runs at most raw client concurrency tasks on it
+   * at once.
+   *
+   * @param rawExecutor executor for raw clients, which is not shut down with the session, or null
+   *     to use a pool of raw executor threads owned by the session
+   */
+  public TiSession(TiConfiguration conf, ExecutorService rawExecutor) {
     this.conf = conf;
     this.channelFactory = new ChannelFactory(conf.getMaxFrameSize());
     this.pdClient = PDClient.createRaw(conf, channelFactory);
+    this.regionManager = new RegionManager(pdClient, conf);
+    this.ownsRawExecutor = rawExecutor == null;
+    this.rawExecutor =
+        rawExecutor == null ? RawExecutors.create(conf.getRawExecutorThreads()) : rawExecutor;
+    loadRegionCacheSnapshot();
+    warmUpRegionCache();
+  }
+
+  /** Load the region cache saved by a previous session on the same cluster, if any */
+  private void loadRegionCacheSnapshot() {
+    if (conf.getRegionCacheSnapshotPath() == null) {
+      return;
+    }
+    Path path = Paths.get(conf.getRegionCacheSnapshotPath());
+    if (!Files.exists(path)) {
+      return;
+    }
+    try (DataInputStream in =
+        new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+      if (in.readInt() != REGION_CACHE_SNAPSHOT_VERSION
+          || in.readLong() != pdClient.getClusterId()) {
+        logger.warn("Ignoring region cache snapshot of another version or cluster: " + path);
+        return;
+      }
+      regionManager.loadSnapshot(in, conf);
+    } catch (IOException e) {
+      logger.warn("Failed to load region cache snapshot: " + path, e);
+    }
+  }
+
+  /** Save the region cache for the next session, replacing the previous snapshot at once */
+  private void saveRegionCacheSnapshot() {
+    Path path = Paths.get(conf.getRegionCacheSnapshotPath());
+    Path tmpPath = path.resolveSibling(path.getFileName() + ".tmp");
+    try {
+      try (DataOutputStream out =
+          new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmpPath)))) {
+        out.writeInt(REGION_CACHE_SNAPSHOT_VERSION);
+        out.writeLong(pdClient.getClusterId());
+        regionManager.saveSnapshot(out);
+      }
+      Files.move(
+          tmpPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      logger.warn("Failed to save region cache snapshot: " + path, e);
+    }
+  }
+
+  /** Load regions of the configured warm up ranges in the background, one task per range */
+  private void warmUpRegionCache() {
+    for (KeyRange range : conf.getRegionCacheWarmUpRanges()) {
+      rawExecutor.execute(
+          () -> {
+            try {
+              regionManager.warmUp(
+                  range.getStart(), range.getEnd(), conf.getRegionCacheWarmUpBatchSize());
+            } catch (Exception e) {
+              logger.warn("Failed to warm up region cache for range " + formatBytes(range), e);
+            }
+          });
+    }
   }
 
   public TiConfiguration getConf() {
@@ -45,12 +145,31 @@ public class TiSession implements AutoCloseable {
     return new TiSession(conf);
   }
 
+  public static TiSession create(TiConfiguration conf, ExecutorService rawExecutor) {
+    return new TiSession(conf, rawExecutor);
+  }
+
+  /** Create a raw client sharing the region cache of this session */
   public RawKVClient createRawClient() {
-    // Create new Region Manager avoiding thread contentions
-    RegionManager regionMgr = new RegionManager(pdClient);
+    return createRawClient(false);
+  }
+
+  /**
+   * Create a raw client
+   *
+   * @param isolateRegionCache whether the client gets a region cache of its own, which starts
+   *     empty, instead of sharing the one of this session
+   */
+  public RawKVClient createRawClient(boolean isolateRegionCache) {
+    RegionManager regionMgr =
+        isolateRegionCache ? new RegionManager(pdClient, conf) : regionManager;
     RegionStoreClientBuilder builder =
         new RegionStoreClientBuilder(conf, channelFactory, regionMgr);
-    return new RawKVClient(conf, builder);
+    return new RawKVClient(conf, builder, rawExecutor, rawScheduler);
+  }
+
+  public RegionManager getRegionManager() {
+    return regionManager;
   }
 
   @VisibleForTesting
@@ -65,6 +184,13 @@ public class TiSession implements AutoCloseable {
 
   @Override
   public void close() {
+    if (conf.getRegionCacheSnapshotPath() != null) {
+      saveRegionCacheSnapshot();
+    }
+    if (ownsRawExecutor) {
+      rawExecutor.shutdown();
+    }
+    rawScheduler.shutdownNow();
     pdClient.close();
     channelFactory.close();
   }
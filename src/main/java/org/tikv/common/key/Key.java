@@ -103,6 +103,18 @@ public class Key implements Comparable<Key> {
     return FastByteComparisons.compareTo(value, other.value);
   }
 
+  /**
+   * Compare with a key held in a ByteString without copying it, the ByteString is never taken as
+   * an infinity, i.e. an empty one is the smallest key
+   */
+  public int compareTo(ByteString other) {
+    requireNonNull(other, "other is null");
+    if (infFlag != 0) {
+      return infFlag;
+    }
+    return FastByteComparisons.compareTo(value, other);
+  }
+
   @Override
   public boolean equals(Object other) {
     if (other == this) {
@@ -24,6 +24,7 @@ import java.util.function.Function;
 import org.apache.log4j.Logger;
 import org.tikv.common.codec.KeyUtils;
 import org.tikv.common.exception.GrpcException;
+import org.tikv.common.exception.RegionException;
 import org.tikv.common.region.RegionErrorReceiver;
 import org.tikv.common.region.RegionManager;
 import org.tikv.common.region.TiRegion;
@@ -135,7 +136,8 @@ public class KVErrorHandler<RespT> implements ErrorHandler<RespT> {
         // this error is reported from raftstore:
         // region has outdated version，please try later.
         logger.warn(String.format("Stale Epoch encountered for region [%s]", ctxRegion));
-        this.regionManager.onRegionStale(ctxRegion.getId());
+        this.regionManager.onRegionEpochNotMatch(
+            ctxRegion, error.getEpochNotMatch().getCurrentRegionsList());
         return false;
       } else if (error.hasServerIsBusy()) {
         // this error is reported from kv:
@@ -156,8 +158,8 @@ public class KVErrorHandler<RespT> implements ErrorHandler<RespT> {
         return true;
       } else if (error.hasRaftEntryTooLarge()) {
         logger.warn(String.format("Raft too large for region [%s]", ctxRegion));
-        throw new StatusRuntimeException(
-            Status.fromCode(Status.Code.UNAVAILABLE).withDescription(error.toString()));
+        // retrying does not help, the caller has to split the request
+        throw new RegionException(error);
       } else if (error.hasKeyNotInRegion()) {
         // this error is reported from raftstore:
         // key requested is not in current region
@@ -16,12 +16,15 @@
 package org.tikv.common.operation.iterator;
 
 import com.google.protobuf.ByteString;
+import java.util.List;
 import org.tikv.common.TiConfiguration;
 import org.tikv.common.region.RegionStoreClient;
 import org.tikv.common.region.RegionStoreClient.RegionStoreClientBuilder;
 import org.tikv.common.region.TiRegion;
 import org.tikv.common.util.BackOffer;
 import org.tikv.common.util.ConcreteBackOffer;
+import org.tikv.common.util.Pair;
+import org.tikv.kvproto.Kvrpcpb;
 
 public class ConcreteScanIterator extends ScanIterator {
   private final long version;
@@ -33,13 +36,12 @@ public class ConcreteScanIterator extends ScanIterator {
     this.version = version;
   }
 
-  TiRegion loadCurrentRegionToCache() throws Exception {
-    TiRegion region;
+  Pair<TiRegion, List<Kvrpcpb.KvPair>> loadRegionBatch(ByteString startKey, int batchSize)
+      throws Exception {
     try (RegionStoreClient client = builder.build(startKey)) {
-      region = client.getRegion();
+      TiRegion region = client.getRegion();
       BackOffer backOffer = ConcreteBackOffer.newScannerNextMaxBackOff();
-      currentCache = client.scan(backOffer, startKey, version);
-      return region;
+      return Pair.create(region, client.scan(backOffer, startKey, version));
     }
   }
 }
@@ -0,0 +1,246 @@
+/*
+ * Copyright 2018 PingCAP, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tikv.common.operation.iterator;
+
+import static java.util.Objects.requireNonNull;
+
+import com.google.protobuf.ByteString;
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import org.tikv.common.TiConfiguration;
+import org.tikv.common.exception.TiClientInternalException;
+import org.tikv.common.exception.TiKVException;
+import org.tikv.common.key.Key;
+import org.tikv.common.region.RegionStoreClient.RegionStoreClientBuilder;
+import org.tikv.common.region.TiRegion;
+import org.tikv.kvproto.Kvrpcpb;
+
+/**
+ * Scans range [startKey, endKey) by splitting it at region boundaries and scanning up to
+ * `concurrency` regions at the same time, each into its own bounded buffer. Since regions do not
+ * overlap, draining the buffers region by region returns key-value pairs in key order.
+ *
+ * <p>The iterator should be closed unless it is drained. Region scans waiting for buffer room
+ * stop once the iterator is closed or no longer reachable, so that an abandoned iterator releases
+ * its executor slots however slowly a live one is consumed.
+ */
+public class ConcurrentRawScanIterator implements CloseableIterator<Kvrpcpb.KvPair> {
+  // number of scan batches a region may buffer before its scan task blocks
+  private static final int BUFFERED_BATCHES = 2;
+  private static final Kvrpcpb.KvPair END_OF_REGION = Kvrpcpb.KvPair.getDefaultInstance();
+  // how often a region scan waiting for buffer room checks whether the iterator is abandoned
+  private static final long ABANDON_CHECK_MS = 100;
+
+  private final TiConfiguration conf;
+  private final RegionStoreClientBuilder builder;
+  private final Executor executor;
+  private final ByteString cf;
+  private final Key endKey;
+  private final ByteString endKeyBytes;
+  private final int concurrency;
+  private final boolean keyOnly;
+  // scans in flight, ordered by their key range
+  private final Deque<RegionScan> regionScans = new ArrayDeque<>();
+  private ByteString nextStartKey;
+  private int limit;
+  private Kvrpcpb.KvPair current;
+  private volatile boolean closed = false;
+
+  public ConcurrentRawScanIterator(
+      TiConfiguration conf,
+      RegionStoreClientBuilder builder,
+      Executor executor,
+      ByteString cf,
+      ByteString startKey,
+      ByteString endKey,
+      int limit,
+      boolean keyOnly) {
+    this.nextStartKey = requireNonNull(startKey, "start key is null");
+    if (startKey.isEmpty()) {
+      throw new IllegalArgumentException("start key cannot be empty");
+    }
+    this.endKeyBytes = requireNonNull(endKey, "end key is null");
+    this.endKey = Key.toRawKey(endKey);
+    this.conf = conf;
+    this.builder = builder;
+    this.executor = executor;
+    this.cf = cf;
+    this.limit = limit;
+    this.keyOnly = keyOnly;
+    this.concurrency = conf.getRawScanConcurrency();
+  }
+
+  /**
+   * Scan of the part of [startKey, endKey) that lies in a single region. It only holds a weak
+   * reference to the iterator, so that an iterator dropped without being closed can be collected.
+   */
+  private static final class RegionScan implements Runnable {
+    private final WeakReference<ConcurrentRawScanIterator> owner;
+    private final TiConfiguration conf;
+    private final RegionStoreClientBuilder builder;
+    private final ByteString cf;
+    private final boolean keyOnly;
+    private final ByteString startKey;
+    private final ByteString endKey;
+    private final BlockingQueue<Kvrpcpb.KvPair> buffer;
+    private volatile Exception error;
+    private Future<?> future;
+
+    private RegionScan(ConcurrentRawScanIterator owner, ByteString startKey, ByteString endKey) {
+      this.owner = new WeakReference<>(owner);
+      this.conf = owner.conf;
+      this.builder = owner.builder;
+      this.cf = owner.cf;
+      this.keyOnly = owner.keyOnly;
+      this.startKey = startKey;
+      this.endKey = endKey;
+      this.buffer = new ArrayBlockingQueue<>(conf.getScanBatchSize() * BUFFERED_BATCHES);
+    }
+
+    private boolean isAbandoned() {
+      ConcurrentRawScanIterator iterator = owner.get();
+      return iterator == null || iterator.closed;
+    }
+
+    @Override
+    public void run() {
+      try {
+        // RawScanIterator follows the range even if the region has split in the meantime
+        Iterator<Kvrpcpb.KvPair> iterator =
+            new RawScanIterator(
+                conf, builder, cf, startKey, endKey, Integer.MAX_VALUE, keyOnly, null);
+        while (!isAbandoned() && iterator.hasNext()) {
+          if (!offer(iterator.next())) {
+            return;
+          }
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      } catch (Exception e) {
+        error = e;
+      }
+      try {
+        offer(END_OF_REGION);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    /**
+     * Add kvPair to the buffer, waiting for the consumer to make room for as long as the iterator
+     * is in use
+     *
+     * @return whether the scan should go on
+     */
+    private boolean offer(Kvrpcpb.KvPair kvPair) throws InterruptedException {
+      while (!isAbandoned()) {
+        if (buffer.offer(kvPair, ABANDON_CHECK_MS, TimeUnit.MILLISECONDS)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    private Kvrpcpb.KvPair take() {
+      try {
+        Kvrpcpb.KvPair kvPair = buffer.take();
+        if (kvPair == END_OF_REGION && error != null) {
+          throw new TiClientInternalException("Error scanning data from region.", error);
+        }
+        return kvPair;
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new TiKVException("Current thread interrupted.", e);
+      }
+    }
+  }
+
+  /** Start scans on following regions until `concurrency` scans are in flight */
+  private void fillRegionScans() {
+    while (regionScans.size() < concurrency && nextStartKey != null) {
+      TiRegion region = builder.getRegionManager().getRegionByKey(nextStartKey);
+      ByteString scanStartKey = nextStartKey;
+      ByteString scanEndKey = endKeyBytes;
+      nextStartKey = null;
+      if (Key.toRawKey(region.getEndKey()).compareTo(endKey) < 0) {
+        scanEndKey = region.getEndKey();
+        nextStartKey = region.getEndKey();
+      }
+      RegionScan scan = new RegionScan(this, scanStartKey, scanEndKey);
+      FutureTask<Void> task = new FutureTask<>(scan, null);
+      executor.execute(task);
+      scan.future = task;
+      regionScans.addLast(scan);
+    }
+  }
+
+  @Override
+  public boolean hasNext() {
+    if (current != null) {
+      return true;
+    }
+    if (closed || limit <= 0) {
+      return false;
+    }
+    while (true) {
+      fillRegionScans();
+      RegionScan scan = regionScans.peekFirst();
+      if (scan == null) {
+        close();
+        return false;
+      }
+      Kvrpcpb.KvPair kvPair = scan.take();
+      if (kvPair != END_OF_REGION) {
+        current = kvPair;
+        return true;
+      }
+      regionScans.removeFirst();
+    }
+  }
+
+  @Override
+  public Kvrpcpb.KvPair next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    Kvrpcpb.KvPair kvPair = current;
+    current = null;
+    if (--limit <= 0) {
+      close();
+    }
+    return kvPair;
+  }
+
+  /** Stops all region scans in flight, results not consumed yet are dropped */
+  @Override
+  public void close() {
+    closed = true;
+    for (RegionScan scan : regionScans) {
+      scan.future.cancel(true);
+    }
+    regionScans.clear();
+  }
+}
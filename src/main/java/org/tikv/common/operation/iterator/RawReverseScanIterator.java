@@ -0,0 +1,130 @@
+/*
+ * Copyright 2018 PingCAP, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tikv.common.operation.iterator;
+
+import static java.util.Objects.requireNonNull;
+
+import com.google.protobuf.ByteString;
+import java.util.List;
+import java.util.NoSuchElementException;
+import org.tikv.common.TiConfiguration;
+import org.tikv.common.exception.TiClientInternalException;
+import org.tikv.common.exception.TiKVException;
+import org.tikv.common.key.Key;
+import org.tikv.common.region.RegionStoreClient;
+import org.tikv.common.region.RegionStoreClient.RegionStoreClientBuilder;
+import org.tikv.common.region.TiRegion;
+import org.tikv.common.util.BackOffFunction;
+import org.tikv.common.util.BackOffer;
+import org.tikv.common.util.ConcreteBackOffer;
+import org.tikv.kvproto.Kvrpcpb;
+
+/**
+ * Scans raw key-value pairs in range [startKey, endKey) in descending key order. Regions are walked
+ * backwards starting from the one holding the keys right before endKey.
+ */
+public class RawReverseScanIterator implements CloseableIterator<Kvrpcpb.KvPair> {
+  private final TiConfiguration conf;
+  private final RegionStoreClientBuilder builder;
+  private final ByteString cf;
+  private final ByteString startKey;
+  private final Key lowerBound;
+  private final boolean keyOnly;
+  // exclusive upper bound of the next batch, null once the range is drained
+  private ByteString endKey;
+  private int limit;
+  private List<Kvrpcpb.KvPair> currentCache;
+  private int index;
+
+  public RawReverseScanIterator(
+      TiConfiguration conf,
+      RegionStoreClientBuilder builder,
+      ByteString cf,
+      ByteString startKey,
+      ByteString endKey,
+      int limit,
+      boolean keyOnly) {
+    this.startKey = requireNonNull(startKey, "start key is null");
+    this.lowerBound = Key.toRawKey(startKey, true);
+    this.endKey = requireNonNull(endKey, "end key is null");
+    this.conf = conf;
+    this.builder = builder;
+    this.cf = cf;
+    this.limit = limit;
+    this.keyOnly = keyOnly;
+  }
+
+  // return true if a non-empty batch is loaded
+  private boolean loadNextBatch() {
+    BackOffer backOffer = ConcreteBackOffer.newScannerNextMaxBackOff();
+    while (endKey != null && limit > 0) {
+      TiRegion region = builder.getRegionManager().getRegionByEndKey(endKey);
+      boolean lastRegion = Key.toRawKey(region.getStartKey(), true).compareTo(lowerBound) <= 0;
+      ByteString regionLowerBound = lastRegion ? startKey : region.getStartKey();
+      int batchSize = Math.min(limit, conf.getScanBatchSize());
+      List<Kvrpcpb.KvPair> batch;
+      try (RegionStoreClient client = builder.build(region)) {
+        batch = client.rawReverseScan(backOffer, endKey, regionLowerBound, cf, batchSize, keyOnly);
+      } catch (final TiKVException e) {
+        // region is looked up again since it may have been split or merged
+        backOffer.doBackOff(BackOffFunction.BackOffFuncType.BoRegionMiss, e);
+        continue;
+      } catch (Exception e) {
+        throw new TiClientInternalException("Error scanning data from region.", e);
+      }
+      if (batch.size() < batchSize) {
+        // current region is drained, continue with the region before it
+        endKey = lastRegion ? null : region.getStartKey();
+      } else {
+        endKey = batch.get(batch.size() - 1).getKey();
+      }
+      if (!batch.isEmpty()) {
+        currentCache = batch;
+        index = 0;
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public boolean hasNext() {
+    if (limit <= 0) {
+      return false;
+    }
+    if (currentCache != null && index < currentCache.size()) {
+      return true;
+    }
+    currentCache = null;
+    return loadNextBatch();
+  }
+
+  @Override
+  public Kvrpcpb.KvPair next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    --limit;
+    return currentCache.get(index++);
+  }
+
+  /** Stops scanning and drops the batch currently cached */
+  @Override
+  public void close() {
+    endKey = null;
+    currentCache = null;
+  }
+}
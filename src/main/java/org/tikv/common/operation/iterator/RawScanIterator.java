@@ -16,18 +16,23 @@
 package org.tikv.common.operation.iterator;
 
 import com.google.protobuf.ByteString;
+import java.util.List;
+import java.util.concurrent.Executor;
 import org.tikv.common.TiConfiguration;
 import org.tikv.common.exception.TiKVException;
-import org.tikv.common.key.Key;
 import org.tikv.common.region.RegionStoreClient;
 import org.tikv.common.region.RegionStoreClient.RegionStoreClientBuilder;
 import org.tikv.common.region.TiRegion;
 import org.tikv.common.util.BackOffFunction;
 import org.tikv.common.util.BackOffer;
 import org.tikv.common.util.ConcreteBackOffer;
+import org.tikv.common.util.Pair;
+import org.tikv.kvproto.Kvrpcpb;
 
 public class RawScanIterator extends ScanIterator {
   private ByteString cf;
+  // scan keys only, leaving values empty
+  private final boolean keyOnly;
 
   public RawScanIterator(
       TiConfiguration conf,
@@ -36,28 +41,53 @@ public class RawScanIterator extends ScanIterator {
       ByteString startKey,
       ByteString endKey,
       int limit) {
-    super(conf, builder, startKey, endKey, limit);
+    this(conf, builder, cf, startKey, endKey, limit, null);
+  }
+
+  /**
+   * Create a raw scan iterator that loads up to scan prefetch depth batches ahead on
+   * prefetchExecutor while the current batch is consumed
+   */
+  public RawScanIterator(
+      TiConfiguration conf,
+      RegionStoreClientBuilder builder,
+      ByteString cf,
+      ByteString startKey,
+      ByteString endKey,
+      int limit,
+      Executor prefetchExecutor) {
+    this(conf, builder, cf, startKey, endKey, limit, false, prefetchExecutor);
+  }
+
+  public RawScanIterator(
+      TiConfiguration conf,
+      RegionStoreClientBuilder builder,
+      ByteString cf,
+      ByteString startKey,
+      ByteString endKey,
+      int limit,
+      boolean keyOnly,
+      Executor prefetchExecutor) {
+    super(conf, builder, startKey, endKey, limit, prefetchExecutor);
     this.cf = cf;
+    this.keyOnly = keyOnly;
+    if (conf.isAdaptiveScanBatchSize()) {
+      this.batchSizer = new ScanBatchSizer(conf);
+    }
   }
 
-  TiRegion loadCurrentRegionToCache() throws Exception {
-    TiRegion region;
+  Pair<TiRegion, List<Kvrpcpb.KvPair>> loadRegionBatch(ByteString startKey, int batchSize)
+      throws Exception {
     try (RegionStoreClient client = builder.build(startKey)) {
-      region = client.getRegion();
+      TiRegion region = client.getRegion();
       BackOffer backOffer = ConcreteBackOffer.newScannerNextMaxBackOff();
-      if (limit <= 0) {
-        currentCache = null;
-      } else {
-        while (true) {
-          try {
-            currentCache = client.rawScan(backOffer, startKey, cf, limit);
-            break;
-          } catch (final TiKVException e) {
-            backOffer.doBackOff(BackOffFunction.BackOffFuncType.BoRegionMiss, e);
-          }
+      while (true) {
+        try {
+          return Pair.create(region, client.rawScan(backOffer, startKey, cf, batchSize, keyOnly));
+        } catch (final TiKVException e) {
+          backOffer.doBackOff(BackOffFunction.BackOffFuncType.BoRegionMiss, e);
         }
       }
-      return region;
     }
   }
 
@@ -65,7 +95,7 @@ public class RawScanIterator extends ScanIterator {
     return limit > 0
         && !(lastBatch
             && (index >= currentCache.size()
-                || Key.toRawKey(currentCache.get(index).getKey()).compareTo(endKey) >= 0));
+                || endKey.compareTo(currentCache.get(index).getKey()) <= 0));
   }
 
   @Override
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2018 PingCAP, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tikv.common.operation.iterator;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.tikv.common.TiConfiguration;
+import org.tikv.kvproto.Kvrpcpb;
+
+/**
+ * Sizes scan requests from the batches already loaded. The row count doubles while full batches
+ * come back well within the target latency and halves when they take longer, and it is always
+ * capped so that a batch of rows of the average size observed stays within the byte limit.
+ */
+final class ScanBatchSizer {
+  // weight of the latest batch in the moving average of bytes per row
+  private static final double ROW_BYTES_WEIGHT = 0.5;
+
+  private final int minRows;
+  private final int maxRows;
+  private final long maxBytes;
+  private final long targetLatencyMs;
+  private int rows;
+  private double rowBytes = -1;
+
+  ScanBatchSizer(TiConfiguration conf) {
+    this.minRows = conf.getMinScanBatchSize();
+    this.maxRows = Math.max(minRows, conf.getMaxScanBatchSize());
+    // leave room in the response frame for everything other than keys and values
+    this.maxBytes = Math.min(conf.getMaxScanBatchBytes(), conf.getMaxFrameSize() / 2);
+    this.targetLatencyMs = conf.getScanBatchTargetLatencyMs();
+    this.rows = clamp(conf.getScanBatchSize());
+  }
+
+  /** Number of rows the next scan request should ask for */
+  int nextBatchSize() {
+    if (rowBytes <= 0) {
+      return rows;
+    }
+    return clamp((int) Math.min(rows, maxBytes / rowBytes));
+  }
+
+  /**
+   * Record a loaded batch
+   *
+   * @param requested number of rows requested
+   * @param batch rows returned
+   * @param elapsedNanos time taken to load the batch
+   */
+  void onBatchLoaded(int requested, List<Kvrpcpb.KvPair> batch, long elapsedNanos) {
+    if (batch.isEmpty()) {
+      return;
+    }
+    long bytes = 0;
+    for (Kvrpcpb.KvPair kvPair : batch) {
+      bytes += kvPair.getKey().size() + kvPair.getValue().size();
+    }
+    double batchRowBytes = (double) bytes / batch.size();
+    rowBytes =
+        rowBytes < 0
+            ? batchRowBytes
+            : rowBytes * (1 - ROW_BYTES_WEIGHT) + batchRowBytes * ROW_BYTES_WEIGHT;
+    // a short batch only means the region is drained, it says nothing about the latency of a full
+    // one
+    if (batch.size() < requested) {
+      return;
+    }
+    long elapsedMs = TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+    if (elapsedMs * 2 < targetLatencyMs) {
+      rows = clamp(rows * 2);
+    } else if (elapsedMs > targetLatencyMs) {
+      rows = clamp(rows / 2);
+    }
+  }
+
+  private int clamp(int rows) {
+    return Math.max(minRows, Math.min(maxRows, rows));
+  }
+}
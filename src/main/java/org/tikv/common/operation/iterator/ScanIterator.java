@@ -18,16 +18,22 @@ package org.tikv.common.operation.iterator;
 import static java.util.Objects.requireNonNull;
 
 import com.google.protobuf.ByteString;
-import java.util.Iterator;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 import org.tikv.common.TiConfiguration;
 import org.tikv.common.exception.TiClientInternalException;
 import org.tikv.common.key.Key;
 import org.tikv.common.region.RegionStoreClient.RegionStoreClientBuilder;
 import org.tikv.common.region.TiRegion;
+import org.tikv.common.util.ConcurrencyLimitedExecutor;
+import org.tikv.common.util.Pair;
 import org.tikv.kvproto.Kvrpcpb;
 
-public abstract class ScanIterator implements Iterator<Kvrpcpb.KvPair> {
+public abstract class ScanIterator implements CloseableIterator<Kvrpcpb.KvPair> {
   protected final TiConfiguration conf;
   protected final RegionStoreClientBuilder builder;
   protected List<Kvrpcpb.KvPair> currentCache;
@@ -40,12 +46,59 @@ public abstract class ScanIterator implements Iterator<Kvrpcpb.KvPair> {
   protected boolean hasEndKey;
   protected boolean lastBatch = false;
 
+  // number of key-value pairs that are still allowed to be loaded
+  private int remaining;
+  // sizes each request adaptively if set, otherwise every request asks for scan batch size rows
+  ScanBatchSizer batchSizer;
+  // executor loading batches ahead of the consumer, null if prefetch is disabled
+  private final Executor prefetchExecutor;
+  // batches being loaded ahead, each one chained on the completion of the previous one
+  private final Deque<CompletableFuture<Batch>> prefetches = new ArrayDeque<>();
+
+  /**
+   * Where a scan continues after a batch. Loads ahead of the consumer pass it along the chain of
+   * prefetches, the consumer only applies it to startKey, remaining and lastBatch when it takes the
+   * batch, so those fields always describe the current batch.
+   */
+  private static final class Cursor {
+    private final ByteString startKey;
+    private final int remaining;
+    private final boolean lastBatch;
+
+    private Cursor(ByteString startKey, int remaining, boolean lastBatch) {
+      this.startKey = startKey;
+      this.remaining = remaining;
+      this.lastBatch = lastBatch;
+    }
+  }
+
+  /** A batch loaded and the cursor following it */
+  private static final class Batch {
+    private final List<Kvrpcpb.KvPair> kvPairs;
+    private final Cursor next;
+
+    private Batch(List<Kvrpcpb.KvPair> kvPairs, Cursor next) {
+      this.kvPairs = kvPairs;
+      this.next = next;
+    }
+  }
+
   ScanIterator(
       TiConfiguration conf,
       RegionStoreClientBuilder builder,
       ByteString startKey,
       ByteString endKey,
       int limit) {
+    this(conf, builder, startKey, endKey, limit, null);
+  }
+
+  ScanIterator(
+      TiConfiguration conf,
+      RegionStoreClientBuilder builder,
+      ByteString startKey,
+      ByteString endKey,
+      int limit,
+      Executor prefetchExecutor) {
     this.startKey = requireNonNull(startKey, "start key is null");
     if (startKey.isEmpty()) {
       throw new IllegalArgumentException("start key cannot be empty");
@@ -53,52 +106,125 @@ public abstract class ScanIterator implements Iterator<Kvrpcpb.KvPair> {
     this.endKey = Key.toRawKey(requireNonNull(endKey, "end key is null"));
     this.hasEndKey = !endKey.equals(ByteString.EMPTY);
     this.limit = limit;
+    this.remaining = limit;
     this.conf = conf;
     this.builder = builder;
+    this.prefetchExecutor = conf.getScanPrefetchDepth() > 0 ? prefetchExecutor : null;
   }
 
-  abstract TiRegion loadCurrentRegionToCache() throws Exception;
+  /**
+   * Load a batch of at most batchSize key-value pairs starting from startKey in the region
+   * containing startKey
+   *
+   * @return the region scanned and the key-value pairs loaded, null key-value pairs stop the scan
+   */
+  abstract Pair<TiRegion, List<Kvrpcpb.KvPair>> loadRegionBatch(ByteString startKey, int batchSize)
+      throws Exception;
 
-  // return true if current cache is not loaded or empty
-  boolean cacheLoadFails() {
-    if (endOfScan || lastBatch) {
-      return true;
-    }
-    if (startKey.isEmpty()) {
-      return true;
+  /**
+   * Load the batch at cursor. Loads sharing the batch sizer must not overlap, which prefetching
+   * guarantees by chaining each load on the previous one.
+   *
+   * @return the batch loaded and the cursor following it, or null if the scan is over
+   */
+  private Batch loadBatch(Cursor cursor) {
+    if (cursor.lastBatch || cursor.startKey.isEmpty() || cursor.remaining <= 0) {
+      return null;
     }
+    int batchSize =
+        Math.min(
+            cursor.remaining,
+            batchSizer == null ? conf.getScanBatchSize() : batchSizer.nextBatchSize());
     try {
-      TiRegion region = loadCurrentRegionToCache();
-      ByteString curRegionEndKey = region.getEndKey();
-      // currentCache is null means no keys found, whereas currentCache is empty means no values
-      // found
+      long startTime = System.nanoTime();
+      Pair<TiRegion, List<Kvrpcpb.KvPair>> regionBatch =
+          loadRegionBatch(cursor.startKey, batchSize);
+      List<Kvrpcpb.KvPair> batch = regionBatch.second;
+      ByteString curRegionEndKey = regionBatch.first.getEndKey();
+      // batch is null means no keys found, whereas batch is empty means no values found
       // the difference lies in whether to continue scanning, because chances are that the same key
-      // is
-      // split in another region because of pending entries, region split, e.t.c.
+      // is split in another region because of pending entries, region split, e.t.c.
       // See https://github.com/pingcap/tispark/issues/393 for details
-      if (currentCache == null) {
-        return true;
+      if (batch == null) {
+        return null;
+      }
+      if (batchSizer != null) {
+        batchSizer.onBatchLoaded(batchSize, batch, System.nanoTime() - startTime);
       }
-      index = 0;
-      Key lastKey = Key.EMPTY;
+      ByteString nextStartKey;
+      Key lastKey;
       // Session should be single-threaded itself
       // so that we don't worry about conf change in the middle
       // of a transaction. Otherwise below code might lose data
-      if (currentCache.size() < conf.getScanBatchSize()) {
-        startKey = curRegionEndKey;
+      if (batch.size() < batchSize) {
+        // current region is drained, scan stops only if its end key reaches endKey
+        nextStartKey = curRegionEndKey;
+        lastKey = Key.toRawKey(curRegionEndKey);
       } else {
         // Start new scan from exact next key in current region
-        lastKey = Key.toRawKey(currentCache.get(currentCache.size() - 1).getKey());
-        startKey = lastKey.next().toByteString();
+        lastKey = Key.toRawKey(batch.get(batch.size() - 1).getKey());
+        nextStartKey = lastKey.next().toByteString();
       }
       // notify last batch if lastKey is greater than or equal to endKey
-      if (hasEndKey && lastKey.compareTo(endKey) >= 0) {
-        lastBatch = true;
-        startKey = null;
-      }
+      boolean last = hasEndKey && lastKey.compareTo(endKey) >= 0;
+      return new Batch(batch, new Cursor(nextStartKey, cursor.remaining - batch.size(), last));
     } catch (Exception e) {
       throw new TiClientInternalException("Error scanning data from region.", e);
     }
+  }
+
+  /** Take the next prefetched batch and request more so that prefetch depth batches are ahead */
+  private Batch takePrefetchedBatch() {
+    if (prefetches.isEmpty()) {
+      Cursor cursor = currentCursor();
+      prefetches.addLast(CompletableFuture.supplyAsync(() -> loadBatch(cursor), prefetchExecutor));
+    }
+    CompletableFuture<Batch> batch = prefetches.pollFirst();
+    CompletableFuture<Batch> last = prefetches.isEmpty() ? batch : prefetches.peekLast();
+    while (prefetches.size() < conf.getScanPrefetchDepth()) {
+      last =
+          last.thenApplyAsync(
+              previous -> previous == null ? null : loadBatch(previous.next), prefetchExecutor);
+      prefetches.addLast(last);
+    }
+    try {
+      return batch.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new TiClientInternalException("Error scanning data from region.", e.getCause());
+    }
+  }
+
+  private Cursor currentCursor() {
+    return new Cursor(startKey, remaining, lastBatch);
+  }
+
+  // return true if current cache is not loaded or empty
+  boolean cacheLoadFails() {
+    if (endOfScan) {
+      return true;
+    }
+    Batch batch;
+    do {
+      // a task of a concurrency limited executor loads in place, its prefetches could be queued
+      // behind it on the same executor
+      batch =
+          prefetchExecutor == null
+                  || (prefetches.isEmpty() && ConcurrencyLimitedExecutor.isRunningTask())
+              ? loadBatch(currentCursor())
+              : takePrefetchedBatch();
+      if (batch == null) {
+        return true;
+      }
+      startKey = batch.next.startKey;
+      remaining = batch.next.remaining;
+      lastBatch = batch.next.lastBatch;
+      // an empty region before the end of the scan does not end it
+    } while (batch.kvPairs.isEmpty());
+    currentCache = batch.kvPairs;
+    index = 0;
     return false;
   }
 
@@ -115,6 +241,17 @@ public abstract class ScanIterator implements Iterator<Kvrpcpb.KvPair> {
     return true;
   }
 
+  /** Stops scanning and drops the batch currently cached as well as the batches prefetched */
+  @Override
+  public void close() {
+    endOfScan = true;
+    currentCache = null;
+    for (CompletableFuture<Batch> prefetch : prefetches) {
+      prefetch.cancel(true);
+    }
+    prefetches.clear();
+  }
+
   private Kvrpcpb.KvPair getCurrent() {
     if (isCacheDrained()) {
       return null;
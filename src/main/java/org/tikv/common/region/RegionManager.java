@@ -18,133 +18,526 @@
 package org.tikv.common.region;
 
 import static org.tikv.common.codec.KeyUtils.formatBytes;
-import static org.tikv.common.util.KeyRangeUtils.makeRange;
+import static org.tikv.common.util.KeyRangeUtils.compareEndKeys;
 
-import com.google.common.collect.RangeMap;
-import com.google.common.collect.TreeRangeMap;
 import com.google.protobuf.ByteString;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
 import org.apache.log4j.Logger;
 import org.tikv.common.ReadOnlyPDClient;
+import org.tikv.common.TiConfiguration;
 import org.tikv.common.exception.GrpcException;
 import org.tikv.common.exception.TiClientInternalException;
-import org.tikv.common.key.Key;
+import org.tikv.common.exception.TiKVException;
 import org.tikv.common.util.ConcreteBackOffer;
+import org.tikv.common.util.FastByteComparisons;
 import org.tikv.common.util.Pair;
 import org.tikv.kvproto.Metapb.Peer;
+import org.tikv.kvproto.Metapb.Region;
+import org.tikv.kvproto.Metapb.RegionEpoch;
 import org.tikv.kvproto.Metapb.Store;
 import org.tikv.kvproto.Metapb.StoreState;
 
 public class RegionManager {
   private static final Logger logger = Logger.getLogger(RegionManager.class);
+  // number of 0xff bytes appended to build a key close to and less than a given key
+  private static final int KEY_BEFORE_PADDING = 8;
   private RegionCache cache;
 
-  // To avoid double retrieval, we used the async version of grpc
-  // When rpc not returned, instead of call again, it wait for previous one done
+  // To avoid double retrieval, a cache miss waits for a PD lookup of the same key or region id
+  // still in flight instead of issuing another one
   public RegionManager(ReadOnlyPDClient pdClient) {
     this.cache = new RegionCache(pdClient);
   }
 
+  public RegionManager(ReadOnlyPDClient pdClient, TiConfiguration conf) {
+    this.cache =
+        new RegionCache(pdClient, conf.getRegionCacheMaxEntries(), conf.getRegionCacheMaxBytes());
+  }
+
+  /**
+   * Caches regions and stores fetched from PD. Lookups never block: regions are indexed by their
+   * start key in a concurrent skip list, and a cache miss goes to PD without holding any lock.
+   * Concurrent updates may briefly leave an outdated region in the index, it is dropped once the
+   * region it overlaps is put or once a request to it fails with a region error. Concurrent misses
+   * on the same key or region id share a single PD lookup, and so do concurrent misses in the range
+   * of a region invalidated since it was cached.
+   *
+   * <p>The number and estimated size of cached regions can be bounded, regions are then evicted
+   * with the CLOCK algorithm: a lookup marks the region found as referenced, and the clock hand
+   * sweeping the regions evicts those not referenced since its previous pass.
+   */
   public static class RegionCache {
+    // rough heap footprint of a cached region besides its metadata
+    private static final int REGION_OVERHEAD_BYTES = 256;
+    // max number of invalidated regions remembered
+    private static final int MAX_INVALIDATED_REGIONS = 1024;
+
     private final Map<Long, TiRegion> regionCache;
     private final Map<Long, Store> storeCache;
-    private final RangeMap<Key, Long> keyToRegionIdCache;
+    // regions keyed by their start key, compared in place, the first region has an empty one
+    private final ConcurrentNavigableMap<ByteString, TiRegion> keyToRegionCache;
+    // regions of regionCache by the store of their leader
+    private final ConcurrentMap<Long, Set<TiRegion>> leaderStoreToRegions;
+    // PD lookups in flight, by the key or region id looked up
+    private final ConcurrentNavigableMap<ByteString, CompletableFuture<TiRegion>> regionLoadsByKey;
+    private final ConcurrentMap<Long, CompletableFuture<TiRegion>> regionLoadsById;
+    // regions invalidated and not cached again since, by start key, keys of such a region likely
+    // still share a region
+    private final ConcurrentNavigableMap<ByteString, TiRegion> invalidatedRegions;
     private final ReadOnlyPDClient pdClient;
+    // limits of cached regions, 0 for no limit
+    private final int maxEntries;
+    private final long maxBytes;
+    private final AtomicLong cachedBytes = new AtomicLong();
+    private final LongAdder evictedRegions = new LongAdder();
+    private final LongAdder evictedBytes = new LongAdder();
+    private final Lock evictionLock = new ReentrantLock();
+    // guarded by evictionLock
+    private Iterator<TiRegion> clockHand;
 
     public RegionCache(ReadOnlyPDClient pdClient) {
-      regionCache = new HashMap<>();
-      storeCache = new HashMap<>();
+      this(pdClient, 0, 0);
+    }
+
+    public RegionCache(ReadOnlyPDClient pdClient, int maxEntries, long maxBytes) {
+      this.maxEntries = maxEntries;
+      this.maxBytes = maxBytes;
+      regionCache = new ConcurrentHashMap<>();
+      storeCache = new ConcurrentHashMap<>();
 
-      keyToRegionIdCache = TreeRangeMap.create();
+      keyToRegionCache = new ConcurrentSkipListMap<>(FastByteComparisons::compareTo);
+      leaderStoreToRegions = new ConcurrentHashMap<>();
+      regionLoadsByKey = new ConcurrentSkipListMap<>(FastByteComparisons::compareTo);
+      regionLoadsById = new ConcurrentHashMap<>();
+      invalidatedRegions = new ConcurrentSkipListMap<>(FastByteComparisons::compareTo);
       this.pdClient = pdClient;
     }
 
-    synchronized TiRegion getRegionByKey(ByteString key) {
-      Long regionId;
-      regionId = keyToRegionIdCache.get(Key.toRawKey(key));
+    TiRegion getRegionByKey(ByteString key) {
+      TiRegion region = getCachedRegionByKey(key);
       if (logger.isDebugEnabled()) {
-        logger.debug(String.format("getRegionByKey key[%s] -> ID[%s]", formatBytes(key), regionId));
+        logger.debug(
+            String.format("getRegionByKey key[%s] -> Region[%s]", formatBytes(key), region));
       }
 
-      if (regionId == null) {
-        logger.debug("Key not found in keyToRegionIdCache:" + formatBytes(key));
-        TiRegion region = pdClient.getRegionByKey(ConcreteBackOffer.newGetBackOff(), key);
-        if (!putRegion(region)) {
-          throw new TiClientInternalException("Invalid Region: " + region.toString());
+      if (region == null) {
+        logger.debug("Key not found in keyToRegionCache:" + formatBytes(key));
+        region = waitForPrecedingLoad(key);
+        if (region == null) {
+          region =
+              loadRegion(
+                  regionLoadsByKey,
+                  key,
+                  () -> getCachedRegionByKey(key),
+                  () -> pdClient.getRegionByKey(ConcreteBackOffer.newGetBackOff(), key));
+        }
+      }
+      markReferenced(region);
+      return region;
+    }
+
+    /**
+     * Waits for a PD lookup in flight for a key before key in the same invalidated region, since it
+     * likely returns the region holding key as well. Keys outside of invalidated regions never
+     * wait, nothing tells whether a lookup of another key would find their region.
+     *
+     * @return the region found by that lookup if it holds key, null otherwise
+     */
+    private TiRegion waitForPrecedingLoad(ByteString key) {
+      Map.Entry<ByteString, TiRegion> invalidated = invalidatedRegions.floorEntry(key);
+      if (invalidated == null || !invalidated.getValue().contains(key)) {
+        return null;
+      }
+      Map.Entry<ByteString, CompletableFuture<TiRegion>> pending = regionLoadsByKey.floorEntry(key);
+      // the lookup has to be for a key of the same invalidated region, and a cached region starting
+      // between both keys means they are in different regions
+      if (pending == null
+          || FastByteComparisons.compareTo(pending.getKey(), invalidated.getKey()) < 0
+          || !keyToRegionCache.subMap(pending.getKey(), false, key, true).isEmpty()) {
+        return null;
+      }
+      // on failure, fall back to a lookup of this key
+      TiRegion region = waitFor(pending.getValue().exceptionally(e -> null));
+      return region != null && region.contains(key) ? region : null;
+    }
+
+    /**
+     * Looks up a region in PD and caches it. If a lookup with the same loadKey is in flight, waits
+     * for its result instead.
+     */
+    private <K> TiRegion loadRegion(
+        ConcurrentMap<K, CompletableFuture<TiRegion>> loads,
+        K loadKey,
+        Supplier<TiRegion> cached,
+        Supplier<TiRegion> loader) {
+      CompletableFuture<TiRegion> load = new CompletableFuture<>();
+      CompletableFuture<TiRegion> pending = loads.putIfAbsent(loadKey, load);
+      if (pending != null) {
+        return waitFor(pending);
+      }
+      try {
+        // a lookup finished right before this one was registered may have cached the region
+        TiRegion region = cached.get();
+        if (region == null) {
+          region = loader.get();
+          if (!putRegion(region)) {
+            throw new TiClientInternalException("Invalid Region: " + region.toString());
+          }
         }
+        load.complete(region);
         return region;
+      } catch (RuntimeException e) {
+        load.completeExceptionally(e);
+        throw e;
+      } finally {
+        loads.remove(loadKey, load);
       }
-      TiRegion region = regionCache.get(regionId);
-      if (logger.isDebugEnabled()) {
-        logger.debug(String.format("getRegionByKey ID[%s] -> Region[%s]", regionId, region));
+    }
+
+    private static TiRegion waitFor(CompletableFuture<TiRegion> future) {
+      try {
+        return future.get();
+      } catch (ExecutionException e) {
+        if (e.getCause() instanceof RuntimeException) {
+          throw (RuntimeException) e.getCause();
+        }
+        throw new TiClientInternalException("Failed to load region.", e.getCause());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new TiKVException("Current thread interrupted.", e);
       }
+    }
 
-      return region;
+    /** Returns the cached region containing key, or null if there is none */
+    private TiRegion getCachedRegionByKey(ByteString key) {
+      Map.Entry<ByteString, TiRegion> entry = keyToRegionCache.floorEntry(key);
+      if (entry == null || !entry.getValue().contains(key)) {
+        return null;
+      }
+      return entry.getValue();
     }
 
-    private synchronized boolean putRegion(TiRegion region) {
+    private boolean putRegion(TiRegion region) {
       if (logger.isDebugEnabled()) {
         logger.debug("putRegion: " + region);
       }
-      regionCache.put(region.getId(), region);
-      keyToRegionIdCache.put(makeRange(region.getStartKey(), region.getEndKey()), region.getId());
+      ByteString startKey = region.getStartKey();
+      ByteString endKey = region.getEndKey();
+      // regions overlapping the new one are outdated, drop them first
+      Map.Entry<ByteString, TiRegion> before = keyToRegionCache.lowerEntry(startKey);
+      if (before != null && before.getValue().contains(startKey)) {
+        removeRegion(before.getValue());
+      }
+      Map<ByteString, TiRegion> overlapping =
+          endKey.isEmpty()
+              ? keyToRegionCache.tailMap(startKey, true)
+              : keyToRegionCache.subMap(startKey, true, endKey, false);
+      for (TiRegion overlapped : overlapping.values()) {
+        removeRegion(overlapped);
+      }
+      // the range of invalidated regions overlapping the new one is known again
+      Map.Entry<ByteString, TiRegion> invalidatedBefore = invalidatedRegions.lowerEntry(startKey);
+      if (invalidatedBefore != null && invalidatedBefore.getValue().contains(startKey)) {
+        invalidatedRegions.remove(invalidatedBefore.getKey(), invalidatedBefore.getValue());
+      }
+      (endKey.isEmpty()
+              ? invalidatedRegions.tailMap(startKey, true)
+              : invalidatedRegions.subMap(startKey, true, endKey, false))
+          .clear();
+      // a region just put gets a full pass of the clock hand before it can be evicted
+      region.referenced = true;
+      // indexed before it is visible, so that no removal can miss the index entry
+      indexRegion(region);
+      TiRegion previous = regionCache.put(region.getId(), region);
+      if (previous != region) {
+        cachedBytes.addAndGet(regionBytes(region));
+        if (previous != null) {
+          cachedBytes.addAndGet(-regionBytes(previous));
+          unindexRegion(previous);
+          keyToRegionCache.remove(previous.getStartKey(), previous);
+        }
+      }
+      keyToRegionCache.put(startKey, region);
+      // invalidating the store of its leader may have dropped the index entry before the region
+      // was visible, index it again as long as it is cached
+      if (regionCache.get(region.getId()) == region) {
+        indexRegion(region);
+      }
+      evictIfNeeded();
       return true;
     }
 
-    private synchronized TiRegion getRegionById(long regionId) {
+    /**
+     * Removes region from both maps unless it has been replaced in the meantime
+     *
+     * @return whether region was removed from regionCache
+     */
+    private boolean removeRegion(TiRegion region) {
+      keyToRegionCache.remove(region.getStartKey(), region);
+      if (regionCache.remove(region.getId(), region)) {
+        cachedBytes.addAndGet(-regionBytes(region));
+        unindexRegion(region);
+        return true;
+      }
+      return false;
+    }
+
+    private void indexRegion(TiRegion region) {
+      leaderStoreToRegions.compute(
+          region.getLeader().getStoreId(),
+          (id, regions) -> {
+            if (regions == null) {
+              regions = ConcurrentHashMap.newKeySet();
+            }
+            regions.add(region);
+            return regions;
+          });
+    }
+
+    /** Removes region from the index, and the set of its store once empty */
+    private void unindexRegion(TiRegion region) {
+      leaderStoreToRegions.computeIfPresent(
+          region.getLeader().getStoreId(),
+          (id, regions) -> {
+            regions.remove(region);
+            return regions.isEmpty() ? null : regions;
+          });
+    }
+
+    private static long regionBytes(TiRegion region) {
+      return REGION_OVERHEAD_BYTES + region.getMeta().getSerializedSize();
+    }
+
+    private static void markReferenced(TiRegion region) {
+      // skip the write when already set, a hot region is then only read by lookups
+      if (!region.referenced) {
+        region.referenced = true;
+      }
+    }
+
+    private boolean isOverLimit() {
+      return (maxEntries > 0 && regionCache.size() > maxEntries)
+          || (maxBytes > 0 && cachedBytes.get() > maxBytes);
+    }
+
+    /** Evicts regions until the cache is within its limits, unless another thread is evicting */
+    private void evictIfNeeded() {
+      if (!isOverLimit() || !evictionLock.tryLock()) {
+        return;
+      }
+      try {
+        // two full sweeps find an unreferenced region unless lookups keep marking them all
+        long steps = 2L * regionCache.size() + 1;
+        while (isOverLimit() && steps-- > 0) {
+          if (clockHand == null || !clockHand.hasNext()) {
+            clockHand = regionCache.values().iterator();
+            if (!clockHand.hasNext()) {
+              return;
+            }
+          }
+          TiRegion region = clockHand.next();
+          if (region.referenced) {
+            region.referenced = false;
+          } else if (removeRegion(region)) {
+            evictedRegions.increment();
+            evictedBytes.add(regionBytes(region));
+          }
+        }
+      } finally {
+        evictionLock.unlock();
+      }
+    }
+
+    long getEvictedRegionCount() {
+      return evictedRegions.sum();
+    }
+
+    long getEvictedRegionBytes() {
+      return evictedBytes.sum();
+    }
+
+    private TiRegion getRegionById(long regionId) {
       TiRegion region = regionCache.get(regionId);
       if (logger.isDebugEnabled()) {
         logger.debug(String.format("getRegionByKey ID[%s] -> Region[%s]", regionId, region));
       }
       if (region == null) {
-        region = pdClient.getRegionByID(ConcreteBackOffer.newGetBackOff(), regionId);
-        if (!putRegion(region)) {
-          throw new TiClientInternalException("Invalid Region: " + region.toString());
-        }
+        region =
+            loadRegion(
+                regionLoadsById,
+                regionId,
+                () -> regionCache.get(regionId),
+                () -> pdClient.getRegionByID(ConcreteBackOffer.newGetBackOff(), regionId));
       }
+      markReferenced(region);
       return region;
     }
 
     /** Removes region associated with regionId from regionCache. */
-    public synchronized void invalidateRegion(long regionId) {
-      try {
+    public void invalidateRegion(long regionId) {
+      if (logger.isDebugEnabled()) {
+        logger.debug(String.format("invalidateRegion ID[%s]", regionId));
+      }
+      TiRegion region = regionCache.remove(regionId);
+      if (region != null) {
+        cachedBytes.addAndGet(-regionBytes(region));
+        unindexRegion(region);
+        keyToRegionCache.remove(region.getStartKey(), region);
+        rememberInvalidated(region);
+      }
+    }
+
+    /** Removes region from regionCache unless it has been replaced in the meantime */
+    public void invalidateRegion(TiRegion region) {
+      if (logger.isDebugEnabled()) {
+        logger.debug(String.format("invalidateRegion Region[%s]", region));
+      }
+      if (removeRegion(region)) {
+        rememberInvalidated(region);
+      }
+    }
+
+    private void rememberInvalidated(TiRegion region) {
+      invalidatedRegions.put(region.getStartKey(), region);
+      // hints only, forgetting some makes misses in their range look PD up on their own
+      while (invalidatedRegions.size() > MAX_INVALIDATED_REGIONS) {
+        invalidatedRegions.pollFirstEntry();
+      }
+    }
+
+    public void invalidateAllRegionForStore(long storeId) {
+      Set<TiRegion> regions = leaderStoreToRegions.get(storeId);
+      if (regions == null) {
+        return;
+      }
+      for (TiRegion r : regions) {
         if (logger.isDebugEnabled()) {
-          logger.debug(String.format("invalidateRegion ID[%s]", regionId));
+          logger.debug(String.format("invalidateAllRegionForStore Region[%s]", r));
+        }
+        if (removeRegion(r)) {
+          rememberInvalidated(r);
+        } else {
+          // replaced in the meantime or not cached yet, drop what is left of it; a region cached
+          // since then is invalidated as well, or indexed again by putRegion if cached later
+          unindexRegion(r);
+          if (removeRegion(r)) {
+            rememberInvalidated(r);
+          }
         }
-        TiRegion region = regionCache.get(regionId);
-        keyToRegionIdCache.remove(makeRange(region.getStartKey(), region.getEndKey()));
-      } catch (Exception ignore) {
-      } finally {
-        regionCache.remove(regionId);
       }
     }
 
-    public synchronized void invalidateAllRegionForStore(long storeId) {
-      List<TiRegion> regionToRemove = new ArrayList<>();
-      for (TiRegion r : regionCache.values()) {
-        if (r.getLeader().getStoreId() == storeId) {
-          if (logger.isDebugEnabled()) {
-            logger.debug(String.format("invalidateAllRegionForStore Region[%s]", r));
-          }
-          regionToRemove.add(r);
+    public void invalidateStore(long storeId) {
+      storeCache.remove(storeId);
+    }
+
+    /** Puts region unless a more recent version of it is cached */
+    private void updateRegion(TiRegion region) {
+      TiRegion cached = regionCache.get(region.getId());
+      if (cached == null || !isNewer(cached.getRegionEpoch(), region.getRegionEpoch())) {
+        putRegion(region);
+      }
+    }
+
+    private static boolean isNewer(RegionEpoch epoch, RegionEpoch other) {
+      return epoch.getVersion() > other.getVersion()
+          || (epoch.getVersion() == other.getVersion()
+              && epoch.getConfVer() > other.getConfVer());
+    }
+
+    private void warmUp(ByteString startKey, ByteString endKey, int batchSize) {
+      Set<Long> storeIds = new HashSet<>();
+      ByteString key = startKey;
+      while (true) {
+        List<TiRegion> regions =
+            pdClient.scanRegions(ConcreteBackOffer.newGetBackOff(), key, endKey, batchSize);
+        if (regions.isEmpty()) {
+          break;
+        }
+        for (TiRegion region : regions) {
+          putRegion(region);
+          storeIds.add(region.getLeader().getStoreId());
         }
+        key = regions.get(regions.size() - 1).getEndKey();
+        if (compareEndKeys(key, endKey) >= 0) {
+          break;
+        }
+      }
+      for (long storeId : storeIds) {
+        getStoreById(storeId);
       }
+    }
 
-      // remove region
-      for (TiRegion r : regionToRemove) {
-        regionCache.remove(r.getId());
-        keyToRegionIdCache.remove(makeRange(r.getStartKey(), r.getEndKey()));
+    private void saveSnapshot(OutputStream out) throws IOException {
+      DataOutputStream data = new DataOutputStream(out);
+      List<TiRegion> regions = new ArrayList<>(keyToRegionCache.values());
+      data.writeInt(regions.size());
+      for (TiRegion region : regions) {
+        region.getMeta().writeDelimitedTo(data);
+        region.getLeader().writeDelimitedTo(data);
       }
+      List<Store> stores = new ArrayList<>(storeCache.values());
+      data.writeInt(stores.size());
+      for (Store store : stores) {
+        store.writeDelimitedTo(data);
+      }
+      data.flush();
     }
 
-    public synchronized void invalidateStore(long storeId) {
-      storeCache.remove(storeId);
+    private void loadSnapshot(InputStream in, TiConfiguration conf) throws IOException {
+      DataInputStream data = new DataInputStream(in);
+      int regionCount = data.readInt();
+      for (int i = 0; i < regionCount; i++) {
+        Region meta = Region.parseDelimitedFrom(data);
+        Peer leader = Peer.parseDelimitedFrom(data);
+        if (meta == null || leader == null) {
+          throw new EOFException("Region cache snapshot is truncated");
+        }
+        // regions cached since the session started are more recent
+        if (!regionCache.containsKey(meta.getId())) {
+          putRegion(
+              TiRegion.fromDecoded(
+                  meta,
+                  leader,
+                  conf.getIsolationLevel(),
+                  conf.getCommandPriority(),
+                  conf.getKvMode()));
+        }
+      }
+      int storeCount = data.readInt();
+      for (int i = 0; i < storeCount; i++) {
+        Store store = Store.parseDelimitedFrom(data);
+        if (store == null) {
+          throw new EOFException("Region cache snapshot is truncated");
+        }
+        storeCache.putIfAbsent(store.getId(), store);
+      }
     }
 
-    public synchronized Store getStoreById(long id) {
+    public Store getStoreById(long id) {
       try {
         Store store = storeCache.get(id);
         if (store == null) {
@@ -168,10 +561,105 @@ public class RegionManager {
     return cache.getRegionByKey(key);
   }
 
+  /**
+   * Load regions overlapping range [startKey, endKey) and their leader stores from PD into the
+   * cache ahead of their first use
+   *
+   * @param startKey start key, inclusive
+   * @param endKey end key, exclusive, ByteString.EMPTY means +INF
+   * @param batchSize number of regions loaded per PD request
+   */
+  public void warmUp(ByteString startKey, ByteString endKey, int batchSize) {
+    cache.warmUp(startKey, endKey, batchSize);
+  }
+
+  /**
+   * Write the cached regions and stores to out, so that a later session can start with them
+   *
+   * @param out stream to write to, which is not closed
+   */
+  public void saveSnapshot(OutputStream out) throws IOException {
+    cache.saveSnapshot(out);
+  }
+
+  /**
+   * Read regions and stores written by saveSnapshot into the cache. They are not checked against
+   * PD: a request to a region which has changed since fails with a region error carrying its epoch,
+   * which drops the region from the cache and has it reloaded.
+   *
+   * @param in stream to read from, which is not closed
+   * @param conf configuration the regions are created with
+   */
+  public void loadSnapshot(InputStream in, TiConfiguration conf) throws IOException {
+    cache.loadSnapshot(in, conf);
+  }
+
   public TiRegion getRegionById(long regionId) {
     return cache.getRegionById(regionId);
   }
 
+  /** Number of regions evicted from the cache to keep it within its limits */
+  public long getEvictedRegionCount() {
+    return cache.getEvictedRegionCount();
+  }
+
+  /** Estimated bytes of the regions evicted from the cache to keep it within its limits */
+  public long getEvictedRegionBytes() {
+    return cache.getEvictedRegionBytes();
+  }
+
+  /**
+   * Get all regions overlapping range [startKey, endKey) in key order
+   *
+   * @param startKey start key, inclusive
+   * @param endKey end key, exclusive, ByteString.EMPTY means +INF
+   * @return regions covering the range
+   */
+  public List<TiRegion> getRegionsInRange(ByteString startKey, ByteString endKey) {
+    List<TiRegion> regions = new ArrayList<>();
+    ByteString key = startKey;
+    while (true) {
+      TiRegion region = cache.getRegionByKey(key);
+      regions.add(region);
+      key = region.getEndKey();
+      if (compareEndKeys(key, endKey) >= 0) {
+        return regions;
+      }
+    }
+  }
+
+  /**
+   * Get the region holding the keys right before key, that is the region whose start key is less
+   * than key and whose end key is greater than or equal to key
+   *
+   * @param key exclusive upper bound of a range, ByteString.EMPTY means +INF
+   * @return the last region overlapping range (-INF, key)
+   */
+  public TiRegion getRegionByEndKey(ByteString key) {
+    TiRegion region = cache.getRegionByKey(keyBefore(key));
+    // keyBefore may fall a few regions before key, walk forward to the one ending at key
+    while (compareEndKeys(region.getEndKey(), key) < 0) {
+      region = cache.getRegionByKey(region.getEndKey());
+    }
+    return region;
+  }
+
+  /** A key less than key and usually in the same region as the keys right before it */
+  private static ByteString keyBefore(ByteString key) {
+    byte[] bytes = key.toByteArray();
+    int last = bytes.length - 1;
+    if (last >= 0 && bytes[last] == 0) {
+      // the key without its trailing zero byte immediately precedes it
+      return ByteString.copyFrom(bytes, 0, last);
+    }
+    byte[] before = Arrays.copyOf(bytes, bytes.length + KEY_BEFORE_PADDING);
+    if (last >= 0) {
+      before[last]--;
+    }
+    Arrays.fill(before, bytes.length, before.length, (byte) 0xff);
+    return ByteString.copyFrom(before);
+  }
+
   public Pair<TiRegion, Store> getRegionStorePairByKey(ByteString key) {
     TiRegion region = cache.getRegionByKey(key);
     if (region == null) {
@@ -203,18 +691,45 @@ public class RegionManager {
     cache.invalidateRegion(regionId);
   }
 
+  /**
+   * Replace a region whose epoch is stale with the regions TiKV reported in an EpochNotMatch error,
+   * usually the halves of a split or the result of a merge, so they need not be reloaded from PD
+   *
+   * @param region the stale region
+   * @param currentRegions regions reported by TiKV, with keys encoded as TiKV stores them
+   */
+  public void onRegionEpochNotMatch(TiRegion region, List<Region> currentRegions) {
+    // a more recent version of the region cached meanwhile is kept, unless a reported one is newer
+    cache.invalidateRegion(region);
+    long leaderStoreId = region.getLeader().getStoreId();
+    for (Region meta : currentRegions) {
+      // leaders are not reported, a split keeps the leader on the same store; a wrong guess is
+      // fixed by the NotLeader error it causes
+      Peer leader = null;
+      for (Peer peer : meta.getPeersList()) {
+        if (peer.getStoreId() == leaderStoreId) {
+          leader = peer;
+        }
+      }
+      cache.updateRegion(region.withMeta(meta, leader));
+    }
+  }
+
   public boolean checkAndDropLeader(long regionId, long storeId) {
     TiRegion r = cache.regionCache.get(regionId);
     if (r != null) {
       TiRegion r2 = r.withNewLeader(storeId);
-      // drop region cache using verId
-      cache.invalidateRegion(regionId);
       if (r2.getLeader().getStoreId() != storeId) {
         // failed to switch leader, possibly region is outdated, we need to drop region cache from
         // regionCache
+        cache.invalidateRegion(regionId);
         logger.warn("Cannot find peer when updating leader (" + regionId + "," + storeId + ")");
         return false;
       }
+      if (r2 != r) {
+        // cache the region with its new leader instead of reloading it from PD
+        cache.putRegion(r2);
+      }
     }
     return true;
   }
@@ -29,6 +29,8 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 import java.util.function.Supplier;
 import org.apache.log4j.Logger;
 import org.tikv.common.AbstractGRPCClient;
@@ -45,8 +47,14 @@ import org.tikv.kvproto.Kvrpcpb.BatchGetResponse;
 import org.tikv.kvproto.Kvrpcpb.GetRequest;
 import org.tikv.kvproto.Kvrpcpb.GetResponse;
 import org.tikv.kvproto.Kvrpcpb.KvPair;
+import org.tikv.kvproto.Kvrpcpb.RawBatchDeleteRequest;
+import org.tikv.kvproto.Kvrpcpb.RawBatchDeleteResponse;
+import org.tikv.kvproto.Kvrpcpb.RawBatchGetRequest;
+import org.tikv.kvproto.Kvrpcpb.RawBatchGetResponse;
 import org.tikv.kvproto.Kvrpcpb.RawBatchPutRequest;
 import org.tikv.kvproto.Kvrpcpb.RawBatchPutResponse;
+import org.tikv.kvproto.Kvrpcpb.RawDeleteRangeRequest;
+import org.tikv.kvproto.Kvrpcpb.RawDeleteRangeResponse;
 import org.tikv.kvproto.Kvrpcpb.RawDeleteRequest;
 import org.tikv.kvproto.Kvrpcpb.RawDeleteResponse;
 import org.tikv.kvproto.Kvrpcpb.RawGetRequest;
@@ -69,9 +77,21 @@ public class RegionStoreClient extends AbstractGRPCClient<TikvBlockingStub, Tikv
     implements RegionErrorReceiver {
 
   private static final Logger logger = Logger.getLogger(RegionStoreClient.class);
+  // TiKV rejects keys longer than its max key size of 8 KiB, so a key of 0xff bytes longer than
+  // that sorts after every key it stores
+  private static final int MAX_KEY_SIZE = 8 * 1024;
+  private static final ByteString REVERSE_SCAN_MAX_KEY;
+
+  static {
+    byte[] maxKey = new byte[MAX_KEY_SIZE + 1];
+    Arrays.fill(maxKey, (byte) 0xff);
+    REVERSE_SCAN_MAX_KEY = ByteString.copyFrom(maxKey);
+  }
   private TiRegion region;
   private final RegionManager regionManager;
-  @VisibleForTesting private final LockResolverClient lockResolverClient;
+  private final RegionStoreClientBuilder clientBuilder;
+  // created on the first lock met, most requests never need it
+  @VisibleForTesting private LockResolverClient lockResolverClient;
   private TikvBlockingStub blockingStub;
   private TikvStub asyncStub;
 
@@ -123,7 +143,7 @@ public class RegionStoreClient extends AbstractGRPCClient<TikvBlockingStub, Tikv
       if (resp.getError().hasLocked()) {
         Lock lock = new Lock(resp.getError().getLocked());
         boolean ok =
-            lockResolverClient.resolveLocks(backOffer, new ArrayList<>(Arrays.asList(lock)));
+            getLockResolverClient().resolveLocks(backOffer, new ArrayList<>(Arrays.asList(lock)));
         if (!ok) {
           // if not resolve all locks, we wait and retry
           backOffer.doBackOff(
@@ -175,7 +195,7 @@ public class RegionStoreClient extends AbstractGRPCClient<TikvBlockingStub, Tikv
     }
 
     if (!locks.isEmpty()) {
-      boolean ok = lockResolverClient.resolveLocks(bo, locks);
+      boolean ok = getLockResolverClient().resolveLocks(bo, locks);
       if (!ok) {
         // if not resolve all locks, we wait and retry
         bo.doBackOff(BoTxnLockFast, new KeyException((resp.getPairsList().get(0).getError())));
@@ -238,7 +258,7 @@ public class RegionStoreClient extends AbstractGRPCClient<TikvBlockingStub, Tikv
     }
 
     if (!locks.isEmpty()) {
-      boolean ok = lockResolverClient.resolveLocks(bo, locks);
+      boolean ok = getLockResolverClient().resolveLocks(bo, locks);
       if (!ok) {
         // if not resolve all locks, we wait and retry
         bo.doBackOff(BoTxnLockFast, new KeyException((resp.getPairsList().get(0).getError())));
@@ -272,6 +292,19 @@ public class RegionStoreClient extends AbstractGRPCClient<TikvBlockingStub, Tikv
     return rawGetHelper(resp);
   }
 
+  public CompletableFuture<ByteString> rawGetAsync(BackOffer backOffer, ByteString key) {
+    Supplier<RawGetRequest> factory =
+        () -> RawGetRequest.newBuilder().setContext(region.getContext()).setKey(key).build();
+    KVErrorHandler<RawGetResponse> handler =
+        new KVErrorHandler<>(
+            regionManager,
+            this,
+            region,
+            resp -> resp.hasRegionError() ? resp.getRegionError() : null);
+    return callAsyncWithRetry(backOffer, TikvGrpc.METHOD_RAW_GET, factory, handler)
+        .thenApply(this::rawGetHelper);
+  }
+
   private ByteString rawGetHelper(RawGetResponse resp) {
     if (resp == null) {
       this.regionManager.onRequestFail(region);
@@ -287,6 +320,38 @@ public class RegionStoreClient extends AbstractGRPCClient<TikvBlockingStub, Tikv
     return resp.getValue();
   }
 
+  public List<KvPair> rawBatchGet(BackOffer backOffer, List<ByteString> keys) {
+    if (keys.isEmpty()) {
+      return new ArrayList<>();
+    }
+    Supplier<RawBatchGetRequest> factory =
+        () ->
+            RawBatchGetRequest.newBuilder()
+                .setContext(region.getContext())
+                .addAllKeys(keys)
+                .build();
+    KVErrorHandler<RawBatchGetResponse> handler =
+        new KVErrorHandler<>(
+            regionManager,
+            this,
+            region,
+            resp -> resp.hasRegionError() ? resp.getRegionError() : null);
+    RawBatchGetResponse resp =
+        callWithRetry(backOffer, TikvGrpc.METHOD_RAW_BATCH_GET, factory, handler);
+    return handleRawBatchGet(resp);
+  }
+
+  private List<KvPair> handleRawBatchGet(RawBatchGetResponse resp) {
+    if (resp == null) {
+      this.regionManager.onRequestFail(region);
+      throw new TiClientInternalException("RawBatchGetResponse failed without a cause");
+    }
+    if (resp.hasRegionError()) {
+      throw new RegionException(resp.getRegionError());
+    }
+    return resp.getPairsList();
+  }
+
   public void rawDelete(BackOffer backOffer, ByteString key) {
     Supplier<RawDeleteRequest> factory =
         () -> RawDeleteRequest.newBuilder().setContext(region.getContext()).setKey(key).build();
@@ -301,6 +366,21 @@ public class RegionStoreClient extends AbstractGRPCClient<TikvBlockingStub, Tikv
     rawDeleteHelper(resp, region);
   }
 
+  public CompletableFuture<Void> rawDeleteAsync(BackOffer backOffer, ByteString key) {
+    TiRegion ctxRegion = region;
+    Supplier<RawDeleteRequest> factory =
+        () -> RawDeleteRequest.newBuilder().setContext(ctxRegion.getContext()).setKey(key).build();
+
+    KVErrorHandler<RawDeleteResponse> handler =
+        new KVErrorHandler<>(
+            regionManager,
+            this,
+            ctxRegion,
+            resp -> resp.hasRegionError() ? resp.getRegionError() : null);
+    return callAsyncWithRetry(backOffer, TikvGrpc.METHOD_RAW_DELETE, factory, handler)
+        .thenAccept(resp -> rawDeleteHelper(resp, ctxRegion));
+  }
+
   private void rawDeleteHelper(RawDeleteResponse resp, TiRegion region) {
     if (resp == null) {
       this.regionManager.onRequestFail(region);
@@ -315,6 +395,81 @@ public class RegionStoreClient extends AbstractGRPCClient<TikvBlockingStub, Tikv
     }
   }
 
+  public void rawBatchDelete(BackOffer backOffer, List<ByteString> keys) {
+    if (keys.isEmpty()) {
+      return;
+    }
+    Supplier<RawBatchDeleteRequest> factory =
+        () ->
+            RawBatchDeleteRequest.newBuilder()
+                .setContext(region.getContext())
+                .addAllKeys(keys)
+                .build();
+    KVErrorHandler<RawBatchDeleteResponse> handler =
+        new KVErrorHandler<>(
+            regionManager,
+            this,
+            region,
+            resp -> resp.hasRegionError() ? resp.getRegionError() : null);
+    RawBatchDeleteResponse resp =
+        callWithRetry(backOffer, TikvGrpc.METHOD_RAW_BATCH_DELETE, factory, handler);
+    handleRawBatchDelete(resp);
+  }
+
+  private void handleRawBatchDelete(RawBatchDeleteResponse resp) {
+    if (resp == null) {
+      this.regionManager.onRequestFail(region);
+      throw new TiClientInternalException("RawBatchDeleteResponse failed without a cause");
+    }
+    String error = resp.getError();
+    if (error != null && !error.isEmpty()) {
+      throw new KeyException(resp.getError());
+    }
+    if (resp.hasRegionError()) {
+      throw new RegionException(resp.getRegionError());
+    }
+  }
+
+  /**
+   * Delete raw keys in range [startKey, endKey), the range should be within current region
+   *
+   * @param backOffer BackOffer
+   * @param startKey raw start key, inclusive
+   * @param endKey raw end key, exclusive
+   */
+  public void rawDeleteRange(BackOffer backOffer, ByteString startKey, ByteString endKey) {
+    Supplier<RawDeleteRangeRequest> factory =
+        () ->
+            RawDeleteRangeRequest.newBuilder()
+                .setContext(region.getContext())
+                .setStartKey(startKey)
+                .setEndKey(endKey)
+                .build();
+    KVErrorHandler<RawDeleteRangeResponse> handler =
+        new KVErrorHandler<>(
+            regionManager,
+            this,
+            region,
+            resp -> resp.hasRegionError() ? resp.getRegionError() : null);
+    RawDeleteRangeResponse resp =
+        callWithRetry(backOffer, TikvGrpc.METHOD_RAW_DELETE_RANGE, factory, handler);
+    handleRawDeleteRange(resp);
+  }
+
+  private void handleRawDeleteRange(RawDeleteRangeResponse resp) {
+    if (resp == null) {
+      this.regionManager.onRequestFail(region);
+      throw new TiClientInternalException("RawDeleteRangeResponse failed without a cause");
+    }
+    String error = resp.getError();
+    if (error != null && !error.isEmpty()) {
+      throw new KeyException(resp.getError());
+    }
+    if (resp.hasRegionError()) {
+      throw new RegionException(resp.getRegionError());
+    }
+  }
+
   public void rawPut(BackOffer backOffer, ByteString key, ByteString value) {
     Supplier<RawPutRequest> factory =
         () ->
@@ -354,6 +509,26 @@ public class RegionStoreClient extends AbstractGRPCClient<TikvBlockingStub, Tikv
     rawPutHelper(resp);
   }
 
+  public CompletableFuture<Void> rawPutAsync(
+      BackOffer backOffer, ByteString key, ByteString value) {
+    Supplier<RawPutRequest> factory =
+        () ->
+            RawPutRequest.newBuilder()
+                .setContext(region.getContext())
+                .setKey(key)
+                .setValue(value)
+                .build();
+
+    KVErrorHandler<RawPutResponse> handler =
+        new KVErrorHandler<>(
+            regionManager,
+            this,
+            region,
+            resp -> resp.hasRegionError() ? resp.getRegionError() : null);
+    return callAsyncWithRetry(backOffer, TikvGrpc.METHOD_RAW_PUT, factory, handler)
+        .thenAccept(this::rawPutHelper);
+  }
+
   private void rawPutHelper(RawPutResponse resp) {
     if (resp == null) {
       this.regionManager.onRequestFail(region);
@@ -411,6 +586,26 @@ public class RegionStoreClient extends AbstractGRPCClient<TikvBlockingStub, Tikv
     handleRawBatchPut(resp);
   }
 
+  public CompletableFuture<Void> rawBatchPutAsync(BackOffer backOffer, List<KvPair> kvPairs) {
+    if (kvPairs.isEmpty()) {
+      return CompletableFuture.completedFuture(null);
+    }
+    Supplier<RawBatchPutRequest> factory =
+        () ->
+            RawBatchPutRequest.newBuilder()
+                .setContext(region.getContext())
+                .addAllPairs(kvPairs)
+                .build();
+    KVErrorHandler<RawBatchPutResponse> handler =
+        new KVErrorHandler<>(
+            regionManager,
+            this,
+            region,
+            resp -> resp.hasRegionError() ? resp.getRegionError() : null);
+    return callAsyncWithRetry(backOffer, TikvGrpc.METHOD_RAW_BATCH_PUT, factory, handler)
+        .thenAccept(this::handleRawBatchPut);
+  }
+
   private void handleRawBatchPut(RawBatchPutResponse resp) {
     if (resp == null) {
       this.regionManager.onRequestFail(region);
@@ -430,7 +625,7 @@ public class RegionStoreClient extends AbstractGRPCClient<TikvBlockingStub, Tikv
    * @param keyOnly true if value of KvPair is not needed
    * @return KvPair list
    */
-  private List<KvPair> rawScan(
+  public List<KvPair> rawScan(
       BackOffer backOffer, ByteString key, ByteString cf, int limit, boolean keyOnly) {
     Supplier<RawScanRequest> factory =
         () ->
@@ -460,6 +655,70 @@ public class RegionStoreClient extends AbstractGRPCClient<TikvBlockingStub, Tikv
     return rawScan(backOffer, key, cf, limit, false);
   }
 
+  /**
+   * Scan raw key-value pairs of this region in range [endKey, startKey) in descending order, which
+   * is how TiKV names the bounds of a reverse scan
+   *
+   * @param startKey exclusive upper bound, ByteString.EMPTY means +INF
+   * @param endKey inclusive lower bound
+   * @return at most limit key-value pairs in descending key order
+   */
+  public List<KvPair> rawReverseScan(
+      BackOffer backOffer,
+      ByteString startKey,
+      ByteString endKey,
+      ByteString cf,
+      int limit,
+      boolean keyOnly) {
+    // TiKV takes an empty start key of a reverse scan as the smallest key rather than +INF, scan
+    // from the end key of the region instead, or from a key after every key in the last region
+    ByteString upperBound =
+        !startKey.isEmpty()
+            ? startKey
+            : region.getEndKey().isEmpty() ? REVERSE_SCAN_MAX_KEY : region.getEndKey();
+    Supplier<RawScanRequest> factory =
+        () ->
+            RawScanRequest.newBuilder()
+                .setContext(region.getContext())
+                .setCfBytes(cf)
+                .setStartKey(upperBound)
+                .setEndKey(endKey)
+                .setReverse(true)
+                .setKeyOnly(keyOnly)
+                .setLimit(limit)
+                .build();
+
+    KVErrorHandler<RawScanResponse> handler =
+        new KVErrorHandler<>(
+            regionManager,
+            this,
+            region,
+            resp -> resp.hasRegionError() ? resp.getRegionError() : null);
+    RawScanResponse resp = callWithRetry(backOffer, TikvGrpc.METHOD_RAW_SCAN, factory, handler);
+    return rawScanHelper(resp);
+  }
+
+  public CompletableFuture<List<KvPair>> rawScanAsync(
+      BackOffer backOffer, ByteString key, ByteString cf, int limit) {
+    Supplier<RawScanRequest> factory =
+        () ->
+            RawScanRequest.newBuilder()
+                .setContext(region.getContext())
+                .setCfBytes(cf)
+                .setStartKey(key)
+                .setLimit(limit)
+                .build();
+
+    KVErrorHandler<RawScanResponse> handler =
+        new KVErrorHandler<>(
+            regionManager,
+            this,
+            region,
+            resp -> resp.hasRegionError() ? resp.getRegionError() : null);
+    return callAsyncWithRetry(backOffer, TikvGrpc.METHOD_RAW_SCAN, factory, handler)
+        .thenApply(this::rawScanHelper);
+  }
+
   private List<KvPair> rawScanHelper(RawScanResponse resp) {
     if (resp == null) {
       this.regionManager.onRequestFail(region);
@@ -471,6 +730,20 @@ public class RegionStoreClient extends AbstractGRPCClient<TikvBlockingStub, Tikv
     return resp.getKvsList();
   }
 
+  /** Stubs of a store, they are immutable and can be shared by all clients on that store */
+  private static final class StoreStubs {
+    private final TikvBlockingStub blockingStub;
+    private final TikvStub asyncStub;
+
+    private StoreStubs(ManagedChannel channel) {
+      this.blockingStub = TikvGrpc.newBlockingStub(channel);
+      this.asyncStub = TikvGrpc.newStub(channel);
+    }
+  }
+
+  // cached by the channel factory, so the clients of all builders sharing it share the stubs
+  private static final Function<ManagedChannel, StoreStubs> STORE_STUBS = StoreStubs::new;
+
   public static class RegionStoreClientBuilder {
     private final TiConfiguration conf;
     private final ChannelFactory channelFactory;
@@ -494,13 +767,11 @@ public class RegionStoreClient extends AbstractGRPCClient<TikvBlockingStub, Tikv
       if (logger.isDebugEnabled()) {
         logger.debug(String.format("Create region store client on address %s", addressStr));
       }
-      ManagedChannel channel = channelFactory.getChannel(addressStr);
-
-      TikvBlockingStub blockingStub = TikvGrpc.newBlockingStub(channel);
-      TikvStub asyncStub = TikvGrpc.newStub(channel);
+      return new RegionStoreClient(conf, region, channelFactory, getStubs(addressStr), this);
+    }
 
-      return new RegionStoreClient(
-          conf, region, channelFactory, blockingStub, asyncStub, regionManager);
+    private StoreStubs getStubs(String addressStr) {
+      return channelFactory.getStub(addressStr, STORE_STUBS);
     }
 
     public RegionStoreClient build(ByteString key) {
@@ -522,20 +793,31 @@ public class RegionStoreClient extends AbstractGRPCClient<TikvBlockingStub, Tikv
       TiConfiguration conf,
       TiRegion region,
       ChannelFactory channelFactory,
-      TikvBlockingStub blockingStub,
-      TikvStub asyncStub,
-      RegionManager regionManager) {
+      StoreStubs stubs,
+      RegionStoreClientBuilder clientBuilder) {
     super(conf, channelFactory);
     checkNotNull(region, "Region is empty");
     checkNotNull(region.getLeader(), "Leader Peer is null");
     checkArgument(region.getLeader() != null, "Leader Peer is null");
-    this.regionManager = regionManager;
+    this.regionManager = clientBuilder.getRegionManager();
+    this.clientBuilder = clientBuilder;
     this.region = region;
-    this.blockingStub = blockingStub;
-    this.asyncStub = asyncStub;
-    this.lockResolverClient =
-        new LockResolverClient(
-            conf, this.blockingStub, this.asyncStub, channelFactory, regionManager);
+    this.blockingStub = stubs.blockingStub;
+    this.asyncStub = stubs.asyncStub;
+  }
+
+  private LockResolverClient getLockResolverClient() {
+    if (lockResolverClient == null) {
+      lockResolverClient =
+          new LockResolverClient(conf, blockingStub, asyncStub, channelFactory, regionManager);
+    }
+    return lockResolverClient;
+  }
+
+  /** Stub of the store without a deadline, shared by all clients of the store */
+  @VisibleForTesting
+  public TikvBlockingStub getStoreBlockingStub() {
+    return blockingStub;
   }
 
   @Override
@@ -571,18 +853,14 @@ public class RegionStoreClient extends AbstractGRPCClient<TikvBlockingStub, Tikv
     }
     region = cachedRegion;
     String addressStr = regionManager.getStoreById(region.getLeader().getStoreId()).getAddress();
-    ManagedChannel channel = channelFactory.getChannel(addressStr);
-    blockingStub = TikvGrpc.newBlockingStub(channel);
-    asyncStub = TikvGrpc.newStub(channel);
+    switchStubs(clientBuilder.getStubs(addressStr));
     return true;
   }
 
   @Override
   public void onStoreNotMatch(Store store) {
     String addressStr = store.getAddress();
-    ManagedChannel channel = channelFactory.getChannel(addressStr);
-    blockingStub = TikvGrpc.newBlockingStub(channel);
-    asyncStub = TikvGrpc.newStub(channel);
+    switchStubs(clientBuilder.getStubs(addressStr));
     if (logger.isDebugEnabled() && region.getLeader().getStoreId() != store.getId()) {
       logger.debug(
           "store_not_match may occur? "
@@ -593,4 +871,9 @@ public class RegionStoreClient extends AbstractGRPCClient<TikvBlockingStub, Tikv
               + addressStr);
     }
   }
+
+  private void switchStubs(StoreStubs stubs) {
+    blockingStub = stubs.blockingStub;
+    asyncStub = stubs.asyncStub;
+  }
 }
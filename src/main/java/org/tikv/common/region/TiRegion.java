@@ -26,7 +26,7 @@ import org.tikv.common.codec.Codec.BytesCodec;
 import org.tikv.common.codec.CodecDataInput;
 import org.tikv.common.codec.KeyUtils;
 import org.tikv.common.exception.TiClientInternalException;
-import org.tikv.common.util.FastByteComparisons;
+import org.tikv.common.util.KeyRangeUtils;
 import org.tikv.kvproto.Kvrpcpb;
 import org.tikv.kvproto.Kvrpcpb.IsolationLevel;
 import org.tikv.kvproto.Metapb;
@@ -38,7 +38,10 @@ public class TiRegion implements Serializable {
   private final Peer peer;
   private final IsolationLevel isolationLevel;
   private final Kvrpcpb.CommandPri commandPri;
+  private final KVMode kvMode;
   private Kvrpcpb.Context cachedContext;
+  // set by RegionCache lookups and cleared by its eviction clock, a lost update only costs accuracy
+  transient boolean referenced;
 
   public TiRegion(
       Region meta,
@@ -46,8 +49,18 @@ public class TiRegion implements Serializable {
       IsolationLevel isolationLevel,
       Kvrpcpb.CommandPri commandPri,
       KVMode kvMode) {
+    this(meta, peer, isolationLevel, commandPri, kvMode, false);
+  }
+
+  private TiRegion(
+      Region meta,
+      Peer peer,
+      IsolationLevel isolationLevel,
+      Kvrpcpb.CommandPri commandPri,
+      KVMode kvMode,
+      boolean decoded) {
     Objects.requireNonNull(meta, "meta is null");
-    this.meta = decodeRegion(meta, kvMode == KVMode.RAW);
+    this.meta = decoded ? meta : decodeRegion(meta, kvMode == KVMode.RAW);
     if (peer == null || peer.getId() == 0) {
       if (meta.getPeersCount() == 0) {
         throw new TiClientInternalException("Empty peer list for region " + meta.getId());
@@ -58,18 +71,33 @@ public class TiRegion implements Serializable {
     }
     this.isolationLevel = isolationLevel;
     this.commandPri = commandPri;
+    this.kvMode = kvMode;
   }
 
-  private TiRegion(
-      Region meta, Peer peer, IsolationLevel isolationLevel, Kvrpcpb.CommandPri commandPri) {
-    this.meta = meta;
-    this.peer = peer;
-    this.isolationLevel = isolationLevel;
-    this.commandPri = commandPri;
+  /** Create a region from metadata whose keys have been decoded already, e.g. by getMeta */
+  static TiRegion fromDecoded(
+      Region meta,
+      Peer peer,
+      IsolationLevel isolationLevel,
+      Kvrpcpb.CommandPri commandPri,
+      KVMode kvMode) {
+    return new TiRegion(meta, peer, isolationLevel, commandPri, kvMode, true);
   }
 
   private TiRegion withNewLeader(Peer p) {
-    return new TiRegion(this.meta, p, this.isolationLevel, this.commandPri);
+    return new TiRegion(this.meta, p, this.isolationLevel, this.commandPri, this.kvMode, true);
+  }
+
+  /**
+   * Create a region from metadata reported by TiKV, e.g. in an EpochNotMatch error, with the same
+   * settings as this one
+   *
+   * @param meta region metadata, with keys encoded as TiKV stores them
+   * @param peer leader peer, or null to use the first peer
+   * @return the new region
+   */
+  public TiRegion withMeta(Region meta, Peer peer) {
+    return new TiRegion(meta, peer, isolationLevel, commandPri, kvMode);
   }
 
   private Region decodeRegion(Region region, boolean isRawRegion) {
@@ -163,23 +191,7 @@ public class TiRegion implements Serializable {
   }
 
   public boolean contains(ByteString key) {
-    return (FastByteComparisons.compareTo(
-                meta.getStartKey().toByteArray(),
-                0,
-                meta.getStartKey().size(),
-                key.toByteArray(),
-                0,
-                key.size())
-            <= 0)
-        && (meta.getEndKey().isEmpty()
-            || FastByteComparisons.compareTo(
-                    meta.getEndKey().toByteArray(),
-                    0,
-                    meta.getEndKey().size(),
-                    key.toByteArray(),
-                    0,
-                    key.size())
-                > 0);
+    return KeyRangeUtils.contains(meta.getStartKey(), meta.getEndKey(), key);
   }
 
   public boolean isValid() {
@@ -21,10 +21,14 @@ import java.net.URI;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
 public class ChannelFactory implements AutoCloseable {
   private final int maxFrameSize;
   private final Map<String, ManagedChannel> connPool = new ConcurrentHashMap<>();
+  // stubs created on the channels of connPool, by stub factory and address
+  private final Map<Function<ManagedChannel, ?>, Map<String, Object>> stubs =
+      new ConcurrentHashMap<>();
 
   public ChannelFactory(int maxFrameSize) {
     this.maxFrameSize = maxFrameSize;
@@ -50,10 +54,29 @@ public class ChannelFactory implements AutoCloseable {
         });
   }
 
+  /**
+   * Get the stub created by stubFactory on the channel of addressStr. Stubs are immutable, so one
+   * per address and factory is shared by every client of the address, like the channel itself.
+   *
+   * @param stubFactory creates the stub on a channel, the same instance must be passed each time
+   */
+  @SuppressWarnings("unchecked")
+  public <T> T getStub(String addressStr, Function<ManagedChannel, T> stubFactory) {
+    Map<String, Object> stubsByAddress =
+        stubs.computeIfAbsent(stubFactory, key -> new ConcurrentHashMap<>());
+    Object stub = stubsByAddress.get(addressStr);
+    if (stub == null) {
+      stub =
+          stubsByAddress.computeIfAbsent(addressStr, key -> stubFactory.apply(getChannel(key)));
+    }
+    return (T) stub;
+  }
+
   public void close() {
     for (ManagedChannel ch : connPool.values()) {
       ch.shutdown();
     }
     connPool.clear();
+    stubs.clear();
   }
 }
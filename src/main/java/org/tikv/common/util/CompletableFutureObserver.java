@@ -0,0 +1,51 @@
+/*
+ * Copyright 2018 PingCAP, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tikv.common.util;
+
+import io.grpc.stub.StreamObserver;
+import java.util.concurrent.CompletableFuture;
+
+/** A unary StreamObserver which completes a CompletableFuture instead of a SettableFuture */
+public class CompletableFutureObserver<Value, RespT> implements StreamObserver<RespT> {
+  private final CompletableFuture<Value> resultFuture;
+  private final FutureObserver.Getter<Value, RespT> getter;
+
+  public CompletableFutureObserver(FutureObserver.Getter<Value, RespT> getter) {
+    this.resultFuture = new CompletableFuture<>();
+    this.getter = getter;
+  }
+
+  @Override
+  public void onNext(RespT resp) {
+    try {
+      resultFuture.complete(getter.getValue(resp));
+    } catch (Exception e) {
+      resultFuture.completeExceptionally(e);
+    }
+  }
+
+  @Override
+  public void onError(Throwable t) {
+    resultFuture.completeExceptionally(t);
+  }
+
+  @Override
+  public void onCompleted() {}
+
+  public CompletableFuture<Value> getFuture() {
+    return resultFuture;
+  }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2018 PingCAP, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tikv.common.util;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Runs tasks on a shared executor with at most maxConcurrency of them running at once. Tasks over
+ * the limit wait in a queue of their own, so that one user of the shared executor cannot take all
+ * of its threads.
+ */
+public class ConcurrencyLimitedExecutor implements Executor {
+  private static final ThreadLocal<Boolean> runningTask = new ThreadLocal<>();
+
+  private final Executor executor;
+  private final int maxConcurrency;
+  // fields below are guarded by this
+  private final Queue<Runnable> queue = new ArrayDeque<>();
+  private int running = 0;
+
+  public ConcurrencyLimitedExecutor(Executor executor, int maxConcurrency) {
+    this.executor = requireNonNull(executor, "executor is null");
+    if (maxConcurrency <= 0) {
+      throw new IllegalArgumentException("Max concurrency cannot be less than 1");
+    }
+    this.maxConcurrency = maxConcurrency;
+  }
+
+  /**
+   * Whether the current thread is running a task of a ConcurrencyLimitedExecutor. Such a task must
+   * not block on other tasks of its executor, they may be queued behind it.
+   */
+  public static boolean isRunningTask() {
+    return runningTask.get() != null;
+  }
+
+  @Override
+  public void execute(Runnable task) {
+    requireNonNull(task, "task is null");
+    synchronized (this) {
+      if (running >= maxConcurrency) {
+        queue.add(task);
+        return;
+      }
+      running++;
+    }
+    dispatch(task);
+  }
+
+  /**
+   * Run tasks on this executor and wait for their results. When called by a task of this executor,
+   * the calling thread runs the tasks that have not started yet itself, so that it never waits for
+   * tasks queued behind it while the others run concurrently.
+   *
+   * @param timeout max time to wait for each task
+   * @return results of tasks, in the same order
+   */
+  public <T> List<T> invokeAll(List<? extends Callable<T>> tasks, long timeout, TimeUnit unit)
+      throws InterruptedException, ExecutionException, TimeoutException {
+    List<FutureTask<T>> futures = new ArrayList<>(tasks.size());
+    for (Callable<T> task : tasks) {
+      FutureTask<T> future = new FutureTask<>(task);
+      futures.add(future);
+      execute(future);
+    }
+    if (isRunningTask()) {
+      for (FutureTask<T> future : futures) {
+        synchronized (this) {
+          queue.remove(future);
+        }
+        // does nothing if the task has already been started by the executor
+        future.run();
+      }
+    }
+    List<T> results = new ArrayList<>(futures.size());
+    for (FutureTask<T> future : futures) {
+      results.add(future.get(timeout, unit));
+    }
+    return results;
+  }
+
+  private void dispatch(Runnable task) {
+    try {
+      executor.execute(() -> run(task));
+    } catch (RejectedExecutionException e) {
+      synchronized (this) {
+        running--;
+      }
+      throw e;
+    }
+  }
+
+  private void run(Runnable task) {
+    runningTask.set(true);
+    try {
+      task.run();
+    } finally {
+      runningTask.remove();
+      Runnable next;
+      synchronized (this) {
+        next = queue.poll();
+        if (next == null) {
+          running--;
+        }
+      }
+      // the slot is handed over to the next queued task
+      if (next != null) {
+        dispatch(next);
+      }
+    }
+  }
+}
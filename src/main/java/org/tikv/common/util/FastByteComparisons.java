@@ -16,6 +16,7 @@ package org.tikv.common.util;
 
 import com.google.common.primitives.Longs;
 import com.google.common.primitives.UnsignedBytes;
+import com.google.protobuf.ByteString;
 import java.lang.reflect.Field;
 import java.nio.ByteOrder;
 import java.security.AccessController;
@@ -38,6 +39,39 @@ public abstract class FastByteComparisons {
         b1, 0, b1.length, b2, 0, b2.length);
   }
 
+  /**
+   * Lexicographically compare two ByteStrings byte by byte. Keys are short, and reading them with
+   * byteAt allocates nothing, whereas buffer views are allocated per call and copy rope strings.
+   */
+  public static int compareTo(ByteString b1, ByteString b2) {
+    if (b1 == b2) {
+      return 0;
+    }
+    int size1 = b1.size();
+    int size2 = b2.size();
+    int minLength = Math.min(size1, size2);
+    for (int i = 0; i < minLength; i++) {
+      int result = UnsignedBytes.compare(b1.byteAt(i), b2.byteAt(i));
+      if (result != 0) {
+        return result;
+      }
+    }
+    return size1 - size2;
+  }
+
+  /** Lexicographically compare a byte array with a ByteString without copying the latter */
+  public static int compareTo(byte[] b1, ByteString b2) {
+    int size2 = b2.size();
+    int minLength = Math.min(b1.length, size2);
+    for (int i = 0; i < minLength; i++) {
+      int result = UnsignedBytes.compare(b1[i], b2.byteAt(i));
+      if (result != 0) {
+        return result;
+      }
+    }
+    return b1.length - size2;
+  }
+
   private interface Comparer<T> {
     int compareTo(T buffer1, int offset1, int length1, T buffer2, int offset2, int length2);
   }
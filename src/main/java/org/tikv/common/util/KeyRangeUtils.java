@@ -31,6 +31,32 @@ public class KeyRangeUtils {
     return Range.closedOpen(toRawKey(startKey, true), toRawKey(endKey));
   }
 
+  /**
+   * Check whether key lies in range [startKey, endKey) without copying any of them
+   *
+   * @param startKey start key, inclusive
+   * @param endKey end key, exclusive, an empty one means +INF
+   * @param key key to check
+   * @return whether the range holds key
+   */
+  public static boolean contains(ByteString startKey, ByteString endKey, ByteString key) {
+    return FastByteComparisons.compareTo(startKey, key) <= 0
+        && (endKey.isEmpty() || FastByteComparisons.compareTo(endKey, key) > 0);
+  }
+
+  /**
+   * Compare two exclusive end keys without copying them, an empty one means +INF
+   *
+   * @return a negative number, zero or a positive number as endKey1 is less than, equal to or
+   *     greater than endKey2
+   */
+  public static int compareEndKeys(ByteString endKey1, ByteString endKey2) {
+    if (endKey1.isEmpty() || endKey2.isEmpty()) {
+      return Boolean.compare(endKey1.isEmpty(), endKey2.isEmpty());
+    }
+    return FastByteComparisons.compareTo(endKey1, endKey2);
+  }
+
   /**
    * Build a Coprocessor Range with CLOSED_OPEN endpoints
    *
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2018 PingCAP, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tikv.common.util;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/** Creates the executors running the tasks and timers of raw clients */
+public class RawExecutors {
+  private static final long KEEP_ALIVE_SECONDS = 60;
+
+  private RawExecutors() {}
+
+  /** Create a pool of daemon threads, threads idle for a minute are let go */
+  public static ExecutorService create(int threads) {
+    if (threads <= 0) {
+      throw new IllegalArgumentException("Raw executor threads cannot be less than 1");
+    }
+    ThreadPoolExecutor executor =
+        new ThreadPoolExecutor(
+            threads,
+            threads,
+            KEEP_ALIVE_SECONDS,
+            TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(),
+            new ThreadFactoryBuilder().setNameFormat("raw-client-%d").setDaemon(true).build());
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+
+  /**
+   * Create a single daemon thread running the timers of raw clients, like batch windows. Timers
+   * only hand work over to the raw executor, so one thread serves every client of a session.
+   */
+  public static ScheduledExecutorService createScheduler() {
+    ScheduledThreadPoolExecutor scheduler =
+        new ScheduledThreadPoolExecutor(
+            1,
+            new ThreadFactoryBuilder().setNameFormat("raw-scheduler-%d").setDaemon(true).build());
+    // timers of closed clients are cancelled, drop them instead of keeping them until they are due
+    scheduler.setRemoveOnCancelPolicy(true);
+    return scheduler;
+  }
+}
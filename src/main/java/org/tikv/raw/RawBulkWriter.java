@@ -0,0 +1,355 @@
+/*
+ * Copyright 2018 PingCAP, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tikv.raw;
+
+import com.google.protobuf.ByteString;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import org.apache.log4j.Logger;
+import org.tikv.common.TiConfiguration;
+import org.tikv.common.exception.TiKVException;
+import org.tikv.common.region.RegionManager;
+import org.tikv.common.region.TiRegion;
+import org.tikv.common.util.FastByteComparisons;
+
+/**
+ * Buffers raw puts and deletes per region and writes them in the background. A region buffer is
+ * flushed once it reaches a size or a number of mutations, or once it has been open for the flush
+ * interval. At most a configured number of flushes run at once, and producers block while the
+ * bytes buffered and in flight exceed the memory budget.
+ *
+ * <p>Only the latest mutation of a key in a buffer is written, and mutations of a key are written
+ * in order. Flushes of a region are chained, and when regions change, e.g. by a split or a merge,
+ * everything buffered is flushed and later flushes wait for the ones before, since a key may have
+ * moved to another region buffer. A failed flush is reported by the next call to the writer.
+ */
+public class RawBulkWriter implements AutoCloseable {
+  private static final Logger logger = Logger.getLogger(RawBulkWriter.class);
+
+  // writes the mutations of a flush, a null value stands for a delete
+  private final Consumer<Map<ByteString, ByteString>> writer;
+  private final RegionManager regionManager;
+  private final Executor executor;
+  private final long flushBytes;
+  private final int flushCount;
+  private final long flushIntervalMs;
+  private final int maxInFlight;
+  private final long maxBufferBytes;
+  // periodic check for buffers open longer than the flush interval, on the shared scheduler
+  private final ScheduledFuture<?> expiryCheck;
+
+  // fields below are guarded by this
+  // buffers by region id and by region start key, their regions never overlap
+  private final Map<Long, RegionBuffer> buffers = new HashMap<>();
+  private final NavigableMap<ByteString, RegionBuffer> buffersByStartKey =
+      new TreeMap<>(FastByteComparisons::compareTo);
+  // flushes waiting for one of the maxInFlight slots
+  private final Deque<PendingFlush> queuedFlushes = new ArrayDeque<>();
+  private int inFlight = 0;
+  // flushes being written, including the ones waiting for previous flushes
+  private final Set<CompletableFuture<Void>> writing = new HashSet<>();
+  // number of flushes enqueued so far, the sequence number of the last one
+  private long enqueuedFlushes = 0;
+  // flushes after this sequence number wait until the ones up to it are written
+  private long barrierSeq = 0;
+  private long builtBarrierSeq = 0;
+  private CompletableFuture<Void> barrier = CompletableFuture.completedFuture(null);
+  // bytes buffered, queued or being written
+  private long bufferedBytes = 0;
+  private Throwable error;
+  private boolean closed = false;
+
+  RawBulkWriter(
+      RawKVClient client,
+      RegionManager regionManager,
+      Executor executor,
+      ScheduledExecutorService scheduler,
+      TiConfiguration conf) {
+    this(mutations -> write(client, mutations), regionManager, executor, scheduler, conf);
+  }
+
+  /** @param scheduler timer of the flush interval, which is shared and not shut down on close */
+  RawBulkWriter(
+      Consumer<Map<ByteString, ByteString>> writer,
+      RegionManager regionManager,
+      Executor executor,
+      ScheduledExecutorService scheduler,
+      TiConfiguration conf) {
+    this.writer = writer;
+    this.regionManager = regionManager;
+    this.executor = executor;
+    this.flushBytes = conf.getRawBulkWriteFlushBytes();
+    this.flushCount = conf.getRawBulkWriteFlushCount();
+    this.flushIntervalMs = conf.getRawBulkWriteFlushIntervalMs();
+    this.maxInFlight = conf.getRawBulkWriteMaxInFlight();
+    this.maxBufferBytes = conf.getRawBulkWriteBufferBytes();
+    this.expiryCheck =
+        scheduler.scheduleWithFixedDelay(
+            this::flushExpired, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+  }
+
+  private static final class RegionBuffer {
+    private final TiRegion region;
+    // latest mutation of each key, a null value stands for a delete
+    private Map<ByteString, ByteString> mutations = new LinkedHashMap<>();
+    private long bytes = 0;
+    private long firstWriteTime;
+    // completes when the last flush of this region is written
+    private CompletableFuture<Void> lastFlush = CompletableFuture.completedFuture(null);
+
+    private RegionBuffer(TiRegion region) {
+      this.region = region;
+    }
+  }
+
+  private static final class PendingFlush {
+    private final RegionBuffer buffer;
+    private final Map<ByteString, ByteString> mutations;
+    private final long bytes;
+    private final long seq;
+
+    private PendingFlush(
+        RegionBuffer buffer, Map<ByteString, ByteString> mutations, long bytes, long seq) {
+      this.buffer = buffer;
+      this.mutations = mutations;
+      this.bytes = bytes;
+      this.seq = seq;
+    }
+  }
+
+  /**
+   * Buffer a raw put, blocking while the memory budget is used up
+   *
+   * @param key raw key
+   * @param value raw value
+   */
+  public void put(ByteString key, ByteString value) {
+    Objects.requireNonNull(value, "value is null");
+    mutate(key, value);
+  }
+
+  /**
+   * Buffer a raw delete, blocking while the memory budget is used up
+   *
+   * @param key raw key
+   */
+  public void delete(ByteString key) {
+    mutate(key, null);
+  }
+
+  /** Write everything buffered so far and wait until it is written */
+  public synchronized void flush() {
+    checkState();
+    flushBuffers(false);
+    while (inFlight > 0 || !queuedFlushes.isEmpty()) {
+      await();
+    }
+    checkState();
+  }
+
+  /** Write everything buffered, then stop accepting mutations */
+  @Override
+  public void close() {
+    synchronized (this) {
+      if (closed) {
+        return;
+      }
+    }
+    try {
+      flush();
+    } finally {
+      synchronized (this) {
+        closed = true;
+      }
+      expiryCheck.cancel(false);
+    }
+  }
+
+  private void mutate(ByteString key, ByteString value) {
+    Objects.requireNonNull(key, "key is null");
+    long size = key.size() + (value == null ? 0 : value.size());
+    TiRegion region = regionManager.getRegionByKey(key);
+    synchronized (this) {
+      checkState();
+      // a mutation larger than the whole budget is let through once nothing else is buffered
+      while (bufferedBytes > 0 && bufferedBytes + size > maxBufferBytes) {
+        flushBuffers(false);
+        await();
+        checkState();
+      }
+      RegionBuffer buffer = getBuffer(region);
+      if (buffer.mutations.isEmpty()) {
+        buffer.firstWriteTime = System.currentTimeMillis();
+      }
+      buffer.mutations.put(key, value);
+      buffer.bytes += size;
+      bufferedBytes += size;
+      if (buffer.bytes >= flushBytes || buffer.mutations.size() >= flushCount) {
+        enqueue(buffer);
+      }
+    }
+  }
+
+  // guarded by this
+  // a region which changed since its buffer was opened, or which overlaps the region of another
+  // buffer, means that keys may have moved between buffers, so everything buffered so far is
+  // flushed and the flushes after it wait until it is written
+  private RegionBuffer getBuffer(TiRegion region) {
+    RegionBuffer buffer = buffers.get(region.getId());
+    if (buffer != null
+        && buffer.region.getRegionEpoch().getVersion() == region.getRegionEpoch().getVersion()) {
+      return buffer;
+    }
+    if (buffer != null || overlapsBuffer(region)) {
+      flushBuffers(false);
+      buffers.clear();
+      buffersByStartKey.clear();
+      barrierSeq = enqueuedFlushes;
+    }
+    buffer = new RegionBuffer(region);
+    buffers.put(region.getId(), buffer);
+    buffersByStartKey.put(region.getStartKey(), buffer);
+    return buffer;
+  }
+
+  // guarded by this
+  private boolean overlapsBuffer(TiRegion region) {
+    Map.Entry<ByteString, RegionBuffer> floor = buffersByStartKey.floorEntry(region.getStartKey());
+    if (floor != null && floor.getValue().region.contains(region.getStartKey())) {
+      return true;
+    }
+    Map.Entry<ByteString, RegionBuffer> higher =
+        buffersByStartKey.higherEntry(region.getStartKey());
+    return higher != null && region.contains(higher.getKey());
+  }
+
+  private synchronized void flushExpired() {
+    if (!closed) {
+      flushBuffers(true);
+    }
+  }
+
+  // guarded by this
+  private void flushBuffers(boolean expiredOnly) {
+    long expireTime = System.currentTimeMillis() - flushIntervalMs;
+    for (RegionBuffer buffer : buffers.values()) {
+      if (!buffer.mutations.isEmpty() && (!expiredOnly || buffer.firstWriteTime <= expireTime)) {
+        enqueue(buffer);
+      }
+    }
+  }
+
+  // guarded by this
+  private void enqueue(RegionBuffer buffer) {
+    queuedFlushes.addLast(
+        new PendingFlush(buffer, buffer.mutations, buffer.bytes, ++enqueuedFlushes));
+    buffer.mutations = new LinkedHashMap<>();
+    buffer.bytes = 0;
+    dispatch();
+  }
+
+  // guarded by this
+  private void dispatch() {
+    while (inFlight < maxInFlight && !queuedFlushes.isEmpty()) {
+      PendingFlush flush = queuedFlushes.pollFirst();
+      inFlight++;
+      // flushes are dispatched in order, so the ones up to the barrier are all being written
+      if (flush.seq > barrierSeq && builtBarrierSeq < barrierSeq) {
+        barrier = CompletableFuture.allOf(writing.toArray(new CompletableFuture<?>[0]));
+        builtBarrierSeq = barrierSeq;
+      }
+      // a flush waits for the previous one of its region so that mutations of a key stay ordered
+      CompletableFuture<Void> written =
+          CompletableFuture.allOf(flush.buffer.lastFlush, barrier)
+              .exceptionally(e -> null)
+              .thenRunAsync(() -> writer.accept(flush.mutations), executor);
+      flush.buffer.lastFlush = written;
+      writing.add(written);
+      written.whenComplete((result, e) -> onFlushed(flush, written, e));
+    }
+  }
+
+  private synchronized void onFlushed(
+      PendingFlush flush, CompletableFuture<Void> written, Throwable e) {
+    inFlight--;
+    writing.remove(written);
+    bufferedBytes -= flush.bytes;
+    if (e != null) {
+      logger.warn("Bulk write flush failed", e);
+      if (error == null) {
+        error = e instanceof CompletionException ? e.getCause() : e;
+      }
+    }
+    dispatch();
+    notifyAll();
+  }
+
+  private static void write(RawKVClient client, Map<ByteString, ByteString> mutations) {
+    Map<ByteString, ByteString> puts = new HashMap<>();
+    List<ByteString> deletes = new ArrayList<>();
+    for (Map.Entry<ByteString, ByteString> mutation : mutations.entrySet()) {
+      if (mutation.getValue() == null) {
+        deletes.add(mutation.getKey());
+      } else {
+        puts.put(mutation.getKey(), mutation.getValue());
+      }
+    }
+    // a key is either put or deleted, so the two requests do not depend on each other
+    if (!puts.isEmpty()) {
+      client.batchPut(puts);
+    }
+    if (!deletes.isEmpty()) {
+      client.batchDelete(deletes);
+    }
+  }
+
+  // guarded by this
+  private void checkState() {
+    if (error != null) {
+      throw new TiKVException("Bulk write failed", error);
+    }
+    if (closed) {
+      throw new IllegalStateException("RawBulkWriter is closed");
+    }
+  }
+
+  // guarded by this
+  private void await() {
+    try {
+      wait();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new TiKVException("Current thread interrupted.", e);
+    }
+  }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2018 PingCAP, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tikv.raw;
+
+import com.google.protobuf.ByteString;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import org.tikv.common.region.RegionManager;
+import org.tikv.common.region.TiRegion;
+import org.tikv.kvproto.Kvrpcpb;
+
+/**
+ * Gathers concurrent single gets for keys in the same region for a short window, or until a number
+ * of distinct keys is reached, and reads them with one raw batch get. A key requested several times
+ * within a window is read once and its value handed to every caller.
+ */
+final class RawGetBatcher extends RegionBatcher<RawGetBatcher.PendingBatch> {
+  /** Reads the keys gathered for a region, keys not found may be left out of the result */
+  interface Sender {
+    List<Kvrpcpb.KvPair> send(TiRegion region, List<ByteString> keys);
+  }
+
+  private final Sender sender;
+  private final int maxKeys;
+
+  RawGetBatcher(
+      RegionManager regionManager,
+      Executor executor,
+      ScheduledExecutorService scheduler,
+      Sender sender,
+      long windowMs,
+      int maxKeys) {
+    super(regionManager, executor, scheduler, windowMs);
+    this.sender = sender;
+    this.maxKeys = maxKeys;
+  }
+
+  final class PendingBatch extends RegionBatcher.Batch {
+    // callers waiting for each distinct key
+    private final Map<ByteString, CompletableFuture<ByteString>> futures = new LinkedHashMap<>();
+
+    private PendingBatch(TiRegion region) {
+      super(region);
+    }
+
+    @Override
+    boolean isFull() {
+      return futures.size() >= maxKeys;
+    }
+
+    @Override
+    void send() {
+      try {
+        List<Kvrpcpb.KvPair> kvPairs = sender.send(region, new ArrayList<>(futures.keySet()));
+        for (Kvrpcpb.KvPair kvPair : kvPairs) {
+          CompletableFuture<ByteString> future = futures.get(kvPair.getKey());
+          if (future != null) {
+            future.complete(kvPair.getValue());
+          }
+        }
+        for (CompletableFuture<ByteString> future : futures.values()) {
+          future.complete(ByteString.EMPTY);
+        }
+      } catch (Exception e) {
+        for (CompletableFuture<ByteString> future : futures.values()) {
+          future.completeExceptionally(e);
+        }
+      }
+    }
+  }
+
+  @Override
+  PendingBatch newBatch(TiRegion region) {
+    return new PendingBatch(region);
+  }
+
+  /**
+   * Add a get to the batch of its region
+   *
+   * @return a future completed with the value of key, or ByteString.EMPTY if key does not exist
+   */
+  CompletableFuture<ByteString> get(ByteString key) {
+    return add(key, batch -> batch.futures.computeIfAbsent(key, k -> new CompletableFuture<>()));
+  }
+}
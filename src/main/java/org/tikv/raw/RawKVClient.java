@@ -15,24 +15,43 @@
 
 package org.tikv.raw;
 
+import static org.tikv.common.util.KeyRangeUtils.compareEndKeys;
+
+import com.google.common.annotations.VisibleForTesting;
 import com.google.protobuf.ByteString;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 import org.apache.log4j.Logger;
 import org.tikv.common.TiConfiguration;
+import org.tikv.common.exception.RegionException;
 import org.tikv.common.exception.TiKVException;
+import org.tikv.common.key.Key;
+import org.tikv.common.operation.iterator.CloseableIterator;
+import org.tikv.common.operation.iterator.ConcurrentRawScanIterator;
+import org.tikv.common.operation.iterator.RawReverseScanIterator;
 import org.tikv.common.operation.iterator.RawScanIterator;
 import org.tikv.common.region.RegionStoreClient;
 import org.tikv.common.region.RegionStoreClient.RegionStoreClientBuilder;
@@ -40,27 +59,112 @@ import org.tikv.common.region.TiRegion;
 import org.tikv.common.util.BackOffFunction;
 import org.tikv.common.util.BackOffer;
 import org.tikv.common.util.ConcreteBackOffer;
+import org.tikv.common.util.ConcurrencyLimitedExecutor;
+import org.tikv.common.util.FastByteComparisons;
+import org.tikv.common.util.Pair;
+import org.tikv.common.util.RawExecutors;
 import org.tikv.kvproto.Kvrpcpb;
 
 public class RawKVClient implements AutoCloseable {
   private final RegionStoreClientBuilder clientBuilder;
   private final TiConfiguration conf;
-  private final ExecutorCompletionService<Object> completionService;
+  // runs the tasks of this client on a shared executor, at most raw client concurrency at once
+  private final ConcurrencyLimitedExecutor executors;
+  // executor created for this client alone, null if the executor is shared
+  private final ExecutorService ownedExecutor;
+  // runs the timers of this client, like batch windows, on a thread that may be shared
+  private final ScheduledExecutorService scheduler;
+  // scheduler created for this client alone, null if the scheduler is shared
+  private final ScheduledExecutorService ownedScheduler;
+  // gathers concurrent puts into batch puts, null if put batching is disabled
+  private final RawPutBatcher putBatcher;
+  // gathers concurrent gets into batch gets, null if get batching is disabled
+  private final RawGetBatcher getBatcher;
   private static final Logger logger = Logger.getLogger(RawKVClient.class);
 
   private static final int RAW_BATCH_PUT_SIZE = 16 * 1024;
+  private static final int RAW_BATCH_GET_SIZE = 16 * 1024;
+  private static final int RAW_BATCH_DELETE_SIZE = 16 * 1024;
+  // keys of a batch are sorted in parallel from this many on
+  private static final int PARALLEL_SORT_THRESHOLD = 8192;
 
   public RawKVClient(TiConfiguration conf, RegionStoreClientBuilder clientBuilder) {
+    this(conf, clientBuilder, null);
+  }
+
+  /**
+   * Create a raw client running its tasks on executor, which may be shared with other clients
+   *
+   * @param executor shared executor, or null to create one owned by this client
+   */
+  public RawKVClient(
+      TiConfiguration conf, RegionStoreClientBuilder clientBuilder, Executor executor) {
+    this(conf, clientBuilder, executor, null);
+  }
+
+  /**
+   * Create a raw client running its tasks on executor and its timers on scheduler, both of which
+   * may be shared with other clients
+   *
+   * @param executor shared executor, or null to create one owned by this client
+   * @param scheduler shared scheduler, or null to create one owned by this client
+   */
+  public RawKVClient(
+      TiConfiguration conf,
+      RegionStoreClientBuilder clientBuilder,
+      Executor executor,
+      ScheduledExecutorService scheduler) {
     Objects.requireNonNull(conf, "conf is null");
     Objects.requireNonNull(clientBuilder, "clientBuilder is null");
     this.conf = conf;
     this.clientBuilder = clientBuilder;
-    ExecutorService executors = Executors.newFixedThreadPool(conf.getRawClientConcurrency());
-    this.completionService = new ExecutorCompletionService<>(executors);
+    this.ownedExecutor =
+        executor == null ? RawExecutors.create(conf.getRawExecutorThreads()) : null;
+    this.executors =
+        new ConcurrencyLimitedExecutor(
+            executor == null ? ownedExecutor : executor, conf.getRawClientConcurrency());
+    this.ownedScheduler = scheduler == null ? RawExecutors.createScheduler() : null;
+    this.scheduler = scheduler == null ? ownedScheduler : scheduler;
+    this.putBatcher =
+        conf.getRawPutBatchWindowMs() > 0
+            ? new RawPutBatcher(
+                clientBuilder.getRegionManager(),
+                executors,
+                this.scheduler,
+                (region, keys, values) ->
+                    doSendBatchPut(
+                        ConcreteBackOffer.newRawKVBackOff(), new Batch(region, keys, values)),
+                conf.getRawPutBatchWindowMs(),
+                conf.getRawPutBatchMaxBytes())
+            : null;
+    this.getBatcher =
+        conf.getRawGetBatchWindowMs() > 0
+            ? new RawGetBatcher(
+                clientBuilder.getRegionManager(),
+                executors,
+                this.scheduler,
+                (region, keys) ->
+                    doSendBatchGet(ConcreteBackOffer.newRawKVBackOff(), new Batch(region, keys)),
+                conf.getRawGetBatchWindowMs(),
+                conf.getRawGetBatchMaxKeys())
+            : null;
   }
 
   @Override
-  public void close() {}
+  public void close() {
+    if (putBatcher != null) {
+      putBatcher.close();
+    }
+    if (getBatcher != null) {
+      getBatcher.close();
+    }
+    if (ownedExecutor != null) {
+      ownedExecutor.shutdown();
+    }
+    if (ownedScheduler != null) {
+      ownedScheduler.shutdownNow();
+    }
+  }
 
   /**
    * Put a raw key-value pair to TiKV
@@ -69,6 +173,10 @@ public class RawKVClient implements AutoCloseable {
    * @param value raw value
    */
   public void put(ByteString key, ByteString value) {
+    if (putBatcher != null) {
+      waitFor(putBatcher.put(key, value));
+      return;
+    }
     BackOffer backOffer = defaultBackOff();
     while (true) {
       RegionStoreClient client = clientBuilder.build(key);
@@ -76,6 +184,9 @@ public class RawKVClient implements AutoCloseable {
         client.rawPut(backOffer, key, value);
         return;
       } catch (final TiKVException e) {
+        if (isRaftEntryTooLarge(e)) {
+          throw e;
+        }
         backOffer.doBackOff(BackOffFunction.BackOffFuncType.BoRegionMiss, e);
       }
     }
@@ -105,11 +216,22 @@ public class RawKVClient implements AutoCloseable {
           entry.getKey(),
           entry.getValue(),
           entry.getValue().stream().map(kvPairs::get).collect(Collectors.toList()),
-          RAW_BATCH_PUT_SIZE);
+          RAW_BATCH_PUT_SIZE,
+          rawBatchPutMaxBytes());
     }
     sendBatchPut(backOffer, batches);
   }
 
+  /**
+   * Create a writer that buffers puts and deletes per region and writes them in the background,
+   * see RawBulkWriter. The writer must be closed to write what is still buffered.
+   *
+   * @return a new bulk writer sharing this client's executor and scheduler
+   */
+  public RawBulkWriter newBulkWriter() {
+    return new RawBulkWriter(this, clientBuilder.getRegionManager(), executors, scheduler, conf);
+  }
+
   /**
    * Get a raw key-value pair from TiKV if key exists
    *
@@ -117,6 +239,9 @@ public class RawKVClient implements AutoCloseable {
    * @return a ByteString value if key exists, ByteString.EMPTY if key does not exist
    */
   public ByteString get(ByteString key) {
+    if (getBatcher != null) {
+      return waitFor(getBatcher.get(key));
+    }
     BackOffer backOffer = defaultBackOff();
     while (true) {
       RegionStoreClient client = clientBuilder.build(key);
@@ -129,17 +254,45 @@ public class RawKVClient implements AutoCloseable {
   }
 
   /**
-   * Scan raw key-value pairs from TiKV in range [startKey, endKey)
+   * Get a list of raw key-value pairs from TiKV
+   *
+   * @param keys list of raw keys
+   * @return a list of key-value pairs in the same order as keys, the value is ByteString.EMPTY if
+   *     the key does not exist
+   */
+  public List<Kvrpcpb.KvPair> batchGet(List<ByteString> keys) {
+    BackOffer backOffer = ConcreteBackOffer.newRawKVBackOff();
+    Map<TiRegion, List<ByteString>> groupKeys = groupKeysByRegion(new LinkedHashSet<>(keys));
+    List<Batch> batches = new ArrayList<>();
+
+    for (Map.Entry<TiRegion, List<ByteString>> entry : groupKeys.entrySet()) {
+      appendBatches(batches, entry.getKey(), entry.getValue(), RAW_BATCH_GET_SIZE);
+    }
+    Map<ByteString, ByteString> found = new HashMap<>();
+    for (Kvrpcpb.KvPair kvPair : sendBatchGet(backOffer, batches)) {
+      found.put(kvPair.getKey(), kvPair.getValue());
+    }
+    List<Kvrpcpb.KvPair> result = new ArrayList<>(keys.size());
+    for (ByteString key : keys) {
+      result.add(
+          Kvrpcpb.KvPair.newBuilder()
+              .setKey(key)
+              .setValue(found.getOrDefault(key, ByteString.EMPTY))
+              .build());
+    }
+    return result;
+  }
+
+  /**
+   * Scan raw key-value pairs from TiKV in range [startKey, endKey). Regions in range are scanned
+   * concurrently when raw scan concurrency in TiConfiguration is greater than 1.
    *
    * @param startKey raw start key, inclusive
    * @param endKey raw end key, exclusive
    * @return list of key-value pairs in range
    */
   public List<Kvrpcpb.KvPair> scan(ByteString cf, ByteString startKey, ByteString endKey) {
-    Iterator<Kvrpcpb.KvPair> iterator = rawScanIterator(conf, clientBuilder, cf, startKey, endKey);
-    List<Kvrpcpb.KvPair> result = new ArrayList<>();
-    iterator.forEachRemaining(result::add);
-    return result;
+    return scan(cf, startKey, endKey, false);
   }
 
   public List<Kvrpcpb.KvPair> scan(ByteString startKey, ByteString endKey) {
@@ -150,20 +303,250 @@ public class RawKVClient implements AutoCloseable {
    * Scan raw key-value pairs from TiKV in range [startKey, endKey)
    *
    * @param startKey raw start key, inclusive
-   * @param limit limit of key-value pairs
+   * @param endKey raw end key, exclusive
+   * @param keyOnly whether to scan keys only, values of the key-value pairs are empty if true
    * @return list of key-value pairs in range
    */
-  public List<Kvrpcpb.KvPair> scan(ByteString cf, ByteString startKey, int limit) {
-    Iterator<Kvrpcpb.KvPair> iterator = rawScanIterator(conf, clientBuilder, cf, startKey, limit);
+  public List<Kvrpcpb.KvPair> scan(
+      ByteString cf, ByteString startKey, ByteString endKey, boolean keyOnly) {
     List<Kvrpcpb.KvPair> result = new ArrayList<>();
-    iterator.forEachRemaining(result::add);
+    try (CloseableIterator<Kvrpcpb.KvPair> iterator = scanIterator(cf, startKey, endKey, keyOnly)) {
+      iterator.forEachRemaining(result::add);
+    }
     return result;
   }
 
+  public List<Kvrpcpb.KvPair> scan(ByteString startKey, ByteString endKey, boolean keyOnly) {
+    return scan(ByteString.EMPTY, startKey, endKey, keyOnly);
+  }
+
+  /**
+   * Scan raw key-value pairs from TiKV in range [startKey, endKey)
+   *
+   * @param startKey raw start key, inclusive
+   * @param limit limit of key-value pairs
+   * @return list of key-value pairs in range
+   */
+  public List<Kvrpcpb.KvPair> scan(ByteString cf, ByteString startKey, int limit) {
+    return scan(cf, startKey, limit, false);
+  }
+
   public List<Kvrpcpb.KvPair> scan(ByteString startKey, int limit) {
     return scan(ByteString.EMPTY, startKey, limit);
   }
 
+  /**
+   * Scan raw key-value pairs from TiKV in range [startKey, endKey)
+   *
+   * @param startKey raw start key, inclusive
+   * @param limit limit of key-value pairs
+   * @param keyOnly whether to scan keys only, values of the key-value pairs are empty if true
+   * @return list of key-value pairs in range
+   */
+  public List<Kvrpcpb.KvPair> scan(ByteString cf, ByteString startKey, int limit, boolean keyOnly) {
+    List<Kvrpcpb.KvPair> result = new ArrayList<>();
+    try (CloseableIterator<Kvrpcpb.KvPair> iterator = scanIterator(cf, startKey, limit, keyOnly)) {
+      iterator.forEachRemaining(result::add);
+    }
+    return result;
+  }
+
+  public List<Kvrpcpb.KvPair> scan(ByteString startKey, int limit, boolean keyOnly) {
+    return scan(ByteString.EMPTY, startKey, limit, keyOnly);
+  }
+
+  /**
+   * Lazily scan raw key-value pairs from TiKV in range [startKey, endKey). Only the batch being
+   * consumed is kept in memory, close the iterator to stop a scan before it is drained.
+   *
+   * @param startKey raw start key, inclusive
+   * @param endKey raw end key, exclusive
+   * @return iterator of key-value pairs in range
+   */
+  public CloseableIterator<Kvrpcpb.KvPair> scanIterator(
+      ByteString cf, ByteString startKey, ByteString endKey) {
+    return scanIterator(cf, startKey, endKey, false);
+  }
+
+  /**
+   * Lazily scan raw key-value pairs from TiKV in range [startKey, endKey)
+   *
+   * @param startKey raw start key, inclusive
+   * @param endKey raw end key, exclusive
+   * @param keyOnly whether to scan keys only, values of the key-value pairs are empty if true
+   * @return iterator of key-value pairs in range
+   */
+  public CloseableIterator<Kvrpcpb.KvPair> scanIterator(
+      ByteString cf, ByteString startKey, ByteString endKey, boolean keyOnly) {
+    if (conf.getRawScanConcurrency() > 1) {
+      return new ConcurrentRawScanIterator(
+          conf, clientBuilder, executors, cf, startKey, endKey, Integer.MAX_VALUE, keyOnly);
+    }
+    return rawScanIterator(conf, clientBuilder, cf, startKey, endKey, keyOnly);
+  }
+
+  public CloseableIterator<Kvrpcpb.KvPair> scanIterator(ByteString startKey, ByteString endKey) {
+    return scanIterator(ByteString.EMPTY, startKey, endKey);
+  }
+
+  /**
+   * Lazily scan at most limit raw key-value pairs from TiKV starting from startKey
+   *
+   * @param startKey raw start key, inclusive
+   * @param limit limit of key-value pairs
+   * @return iterator of key-value pairs in range
+   */
+  public CloseableIterator<Kvrpcpb.KvPair> scanIterator(
+      ByteString cf, ByteString startKey, int limit) {
+    return scanIterator(cf, startKey, limit, false);
+  }
+
+  /**
+   * Lazily scan at most limit raw key-value pairs from TiKV starting from startKey
+   *
+   * @param startKey raw start key, inclusive
+   * @param limit limit of key-value pairs
+   * @param keyOnly whether to scan keys only, values of the key-value pairs are empty if true
+   * @return iterator of key-value pairs in range
+   */
+  public CloseableIterator<Kvrpcpb.KvPair> scanIterator(
+      ByteString cf, ByteString startKey, int limit, boolean keyOnly) {
+    return rawScanIterator(conf, clientBuilder, cf, startKey, limit, keyOnly);
+  }
+
+  public CloseableIterator<Kvrpcpb.KvPair> scanIterator(ByteString startKey, int limit) {
+    return scanIterator(ByteString.EMPTY, startKey, limit);
+  }
+
+  /**
+   * Lazily scan raw key-value pairs from TiKV in range [startKey, endKey) as a sequential stream.
+   * Closing the stream stops the underlying scan, so short-circuiting pipelines should be run in a
+   * try-with-resources block.
+   *
+   * @param startKey raw start key, inclusive
+   * @param endKey raw end key, exclusive
+   * @return stream of key-value pairs in range
+   */
+  public Stream<Kvrpcpb.KvPair> scanStream(ByteString cf, ByteString startKey, ByteString endKey) {
+    return toStream(scanIterator(cf, startKey, endKey));
+  }
+
+  public Stream<Kvrpcpb.KvPair> scanStream(ByteString startKey, ByteString endKey) {
+    return scanStream(ByteString.EMPTY, startKey, endKey);
+  }
+
+  /**
+   * Lazily scan at most limit raw key-value pairs from TiKV starting from startKey as a sequential
+   * stream
+   *
+   * @param startKey raw start key, inclusive
+   * @param limit limit of key-value pairs
+   * @return stream of key-value pairs in range
+   */
+  public Stream<Kvrpcpb.KvPair> scanStream(ByteString cf, ByteString startKey, int limit) {
+    return toStream(scanIterator(cf, startKey, limit));
+  }
+
+  public Stream<Kvrpcpb.KvPair> scanStream(ByteString startKey, int limit) {
+    return scanStream(ByteString.EMPTY, startKey, limit);
+  }
+
+  /**
+   * Scan raw key-value pairs from TiKV in range [startKey, endKey) and pass each of them to action
+   * in key order without collecting them
+   *
+   * @param startKey raw start key, inclusive
+   * @param endKey raw end key, exclusive
+   * @param action action to perform on each key-value pair
+   */
+  public void scanForEach(
+      ByteString cf, ByteString startKey, ByteString endKey, Consumer<Kvrpcpb.KvPair> action) {
+    Objects.requireNonNull(action, "action is null");
+    try (CloseableIterator<Kvrpcpb.KvPair> iterator = scanIterator(cf, startKey, endKey)) {
+      iterator.forEachRemaining(action);
+    }
+  }
+
+  public void scanForEach(ByteString startKey, ByteString endKey, Consumer<Kvrpcpb.KvPair> action) {
+    scanForEach(ByteString.EMPTY, startKey, endKey, action);
+  }
+
+  /**
+   * Scan raw key-value pairs from TiKV in range [startKey, endKey) in descending key order
+   *
+   * @param endKey raw end key, exclusive, ByteString.EMPTY means +INF
+   * @param startKey raw start key, inclusive, ByteString.EMPTY means -INF
+   * @param limit limit of key-value pairs
+   * @return list of at most limit key-value pairs in range, greatest key first
+   */
+  public List<Kvrpcpb.KvPair> reverseScan(
+      ByteString cf, ByteString endKey, ByteString startKey, int limit) {
+    List<Kvrpcpb.KvPair> result = new ArrayList<>();
+    try (CloseableIterator<Kvrpcpb.KvPair> iterator =
+        reverseScanIterator(cf, endKey, startKey, limit, false)) {
+      iterator.forEachRemaining(result::add);
+    }
+    return result;
+  }
+
+  public List<Kvrpcpb.KvPair> reverseScan(ByteString endKey, ByteString startKey, int limit) {
+    return reverseScan(ByteString.EMPTY, endKey, startKey, limit);
+  }
+
+  public List<Kvrpcpb.KvPair> reverseScan(ByteString endKey, int limit) {
+    return reverseScan(endKey, ByteString.EMPTY, limit);
+  }
+
+  /**
+   * Lazily scan raw key-value pairs from TiKV in range [startKey, endKey) in descending key order
+   *
+   * @param endKey raw end key, exclusive, ByteString.EMPTY means +INF
+   * @param startKey raw start key, inclusive, ByteString.EMPTY means -INF
+   * @param limit limit of key-value pairs
+   * @param keyOnly whether to scan keys only, values of the key-value pairs are empty if true
+   * @return iterator of key-value pairs in range, greatest key first
+   */
+  public CloseableIterator<Kvrpcpb.KvPair> reverseScanIterator(
+      ByteString cf, ByteString endKey, ByteString startKey, int limit, boolean keyOnly) {
+    return new RawReverseScanIterator(conf, clientBuilder, cf, startKey, endKey, limit, keyOnly);
+  }
+
+  public CloseableIterator<Kvrpcpb.KvPair> reverseScanIterator(
+      ByteString endKey, ByteString startKey, int limit) {
+    return reverseScanIterator(ByteString.EMPTY, endKey, startKey, limit, false);
+  }
+
+  /**
+   * Count raw keys in range [startKey, endKey). Regions in range are scanned for keys only and in
+   * parallel.
+   *
+   * @param startKey raw start key, inclusive, ByteString.EMPTY means -INF
+   * @param endKey raw end key, exclusive, ByteString.EMPTY means +INF
+   * @return number of keys in range
+   */
+  public long count(ByteString cf, ByteString startKey, ByteString endKey) {
+    if (Key.toRawKey(startKey, true).compareTo(Key.toRawKey(endKey)) >= 0) {
+      return 0;
+    }
+    if (startKey.isEmpty()) {
+      // scans cannot start from the empty key, which is never stored, so start right after it
+      startKey = Key.toRawKey(startKey).next().toByteString();
+    }
+    List<Callable<Long>> tasks = new ArrayList<>();
+    for (RegionRange range : splitRangeByRegion(startKey, endKey)) {
+      tasks.add(() -> doCount(cf, range));
+    }
+    long count = 0;
+    for (long regionCount : submitAndWait(tasks)) {
+      count += regionCount;
+    }
+    return count;
+  }
+
+  public long count(ByteString startKey, ByteString endKey) {
+    return count(ByteString.EMPTY, startKey, endKey);
+  }
+
   /**
    * Delete a raw key-value pair from TiKV if key exists
    *
@@ -182,6 +565,243 @@ public class RawKVClient implements AutoCloseable {
     }
   }
 
+  /**
+   * Delete a set of raw keys from TiKV, keys that do not exist are ignored
+   *
+   * @param keys raw keys to be deleted
+   */
+  public void batchDelete(Collection<ByteString> keys) {
+    BackOffer backOffer = ConcreteBackOffer.newRawKVBackOff();
+    Map<TiRegion, List<ByteString>> groupKeys = groupKeysByRegion(new LinkedHashSet<>(keys));
+    List<Batch> batches = new ArrayList<>();
+
+    for (Map.Entry<TiRegion, List<ByteString>> entry : groupKeys.entrySet()) {
+      appendBatches(batches, entry.getKey(), entry.getValue(), RAW_BATCH_DELETE_SIZE);
+    }
+    sendBatchDelete(backOffer, batches);
+  }
+
+  /**
+   * Delete raw keys in range [startKey, endKey) from TiKV
+   *
+   * @param startKey raw start key, inclusive
+   * @param endKey raw end key, exclusive, ByteString.EMPTY means +INF
+   */
+  public void deleteRange(ByteString startKey, ByteString endKey) {
+    if (Key.toRawKey(startKey, true).compareTo(Key.toRawKey(endKey)) >= 0) {
+      return;
+    }
+    BackOffer backOffer = ConcreteBackOffer.newRawKVBackOff();
+    List<Callable<Void>> tasks = new ArrayList<>();
+    for (RegionRange range : splitRangeByRegion(startKey, endKey)) {
+      tasks.add(
+          () -> {
+            doSendDeleteRange(ConcreteBackOffer.create(backOffer), range);
+            return null;
+          });
+    }
+    submitAndWait(tasks);
+  }
+
+  /**
+   * Asynchronously put a raw key-value pair to TiKV
+   *
+   * @param key raw key
+   * @param value raw value
+   * @return a future completed once the pair is written
+   */
+  public CompletableFuture<Void> putAsync(ByteString key, ByteString value) {
+    if (putBatcher != null) {
+      return putBatcher.put(key, value);
+    }
+    return withSyncFallback(
+        () -> clientBuilder.build(key).rawPutAsync(defaultBackOff(), key, value),
+        () -> {
+          put(key, value);
+          return null;
+        });
+  }
+
+  /**
+   * Asynchronously put a set of raw key-value pair to TiKV
+   *
+   * @param kvPairs kvPairs
+   * @return a future completed once all pairs are written
+   */
+  public CompletableFuture<Void> batchPutAsync(Map<ByteString, ByteString> kvPairs) {
+    BackOffer backOffer = ConcreteBackOffer.newRawKVBackOff();
+    Map<TiRegion, List<ByteString>> groupKeys = groupKeysByRegion(kvPairs.keySet());
+    List<Batch> batches = new ArrayList<>();
+
+    for (Map.Entry<TiRegion, List<ByteString>> entry : groupKeys.entrySet()) {
+      appendBatches(
+          batches,
+          entry.getKey(),
+          entry.getValue(),
+          entry.getValue().stream().map(kvPairs::get).collect(Collectors.toList()),
+          RAW_BATCH_PUT_SIZE,
+          rawBatchPutMaxBytes());
+    }
+    CompletableFuture<?>[] futures = new CompletableFuture<?>[batches.size()];
+    for (int i = 0; i < batches.size(); i++) {
+      Batch batch = batches.get(i);
+      futures[i] =
+          withSyncFallback(
+              () ->
+                  clientBuilder
+                      .build(batch.region)
+                      .rawBatchPutAsync(ConcreteBackOffer.create(backOffer), toKvPairs(batch)),
+              () -> {
+                doSendBatchPut(ConcreteBackOffer.create(backOffer), batch);
+                return null;
+              });
+    }
+    return CompletableFuture.allOf(futures);
+  }
+
+  /**
+   * Asynchronously get a raw key-value pair from TiKV if key exists
+   *
+   * @param key raw key
+   * @return a future of the value, ByteString.EMPTY if key does not exist
+   */
+  public CompletableFuture<ByteString> getAsync(ByteString key) {
+    if (getBatcher != null) {
+      return getBatcher.get(key);
+    }
+    return withSyncFallback(
+        () -> clientBuilder.build(key).rawGetAsync(defaultBackOff(), key), () -> get(key));
+  }
+
+  /**
+   * Asynchronously scan raw key-value pairs from TiKV in range [startKey, endKey)
+   *
+   * @param startKey raw start key, inclusive
+   * @param endKey raw end key, exclusive
+   * @return a future of key-value pairs in range
+   */
+  public CompletableFuture<List<Kvrpcpb.KvPair>> scanAsync(
+      ByteString cf, ByteString startKey, ByteString endKey) {
+    return scanAsync(cf, startKey, Key.toRawKey(endKey), Integer.MAX_VALUE, new ArrayList<>());
+  }
+
+  public CompletableFuture<List<Kvrpcpb.KvPair>> scanAsync(
+      ByteString startKey, ByteString endKey) {
+    return scanAsync(ByteString.EMPTY, startKey, endKey);
+  }
+
+  /**
+   * Asynchronously scan raw key-value pairs from TiKV starting from startKey
+   *
+   * @param startKey raw start key, inclusive
+   * @param limit limit of key-value pairs
+   * @return a future of key-value pairs in range
+   */
+  public CompletableFuture<List<Kvrpcpb.KvPair>> scanAsync(
+      ByteString cf, ByteString startKey, int limit) {
+    return scanAsync(cf, startKey, Key.toRawKey(ByteString.EMPTY), limit, new ArrayList<>());
+  }
+
+  public CompletableFuture<List<Kvrpcpb.KvPair>> scanAsync(ByteString startKey, int limit) {
+    return scanAsync(ByteString.EMPTY, startKey, limit);
+  }
+
+  /**
+   * Asynchronously delete a raw key-value pair from TiKV if key exists
+   *
+   * @param key raw key to be deleted
+   * @return a future completed once the key is deleted
+   */
+  public CompletableFuture<Void> deleteAsync(ByteString key) {
+    return withSyncFallback(
+        () -> clientBuilder.build(key).rawDeleteAsync(defaultBackOff(), key),
+        () -> {
+          delete(key);
+          return null;
+        });
+  }
+
+  /**
+   * Scan one batch per step, chaining the next step onto the completion of the previous one so
+   * that no thread waits on the RPC.
+   */
+  private CompletableFuture<List<Kvrpcpb.KvPair>> scanAsync(
+      ByteString cf, ByteString startKey, Key endKey, int limit, List<Kvrpcpb.KvPair> result) {
+    if (limit <= 0) {
+      return CompletableFuture.completedFuture(result);
+    }
+    int batchSize = Math.min(limit, conf.getScanBatchSize());
+    return withSyncFallback(
+            () -> {
+              RegionStoreClient client = clientBuilder.build(startKey);
+              TiRegion region = client.getRegion();
+              return client
+                  .rawScanAsync(defaultBackOff(), startKey, cf, batchSize)
+                  .thenApply(kvPairs -> Pair.create(region, kvPairs));
+            },
+            () -> {
+              BackOffer backOffer = ConcreteBackOffer.newScannerNextMaxBackOff();
+              while (true) {
+                RegionStoreClient client = clientBuilder.build(startKey);
+                try {
+                  return Pair.create(
+                      client.getRegion(), client.rawScan(backOffer, startKey, cf, batchSize));
+                } catch (final TiKVException e) {
+                  backOffer.doBackOff(BackOffFunction.BackOffFuncType.BoRegionMiss, e);
+                }
+              }
+            })
+        .thenCompose(
+            batch -> {
+              List<Kvrpcpb.KvPair> kvPairs = batch.second;
+              for (Kvrpcpb.KvPair kvPair : kvPairs) {
+                if (endKey.compareTo(kvPair.getKey()) <= 0) {
+                  return CompletableFuture.completedFuture(result);
+                }
+                result.add(kvPair);
+              }
+              ByteString nextKey =
+                  kvPairs.size() < batchSize
+                      ? batch.first.getEndKey()
+                      : Key.toRawKey(kvPairs.get(kvPairs.size() - 1).getKey())
+                          .next()
+                          .toByteString();
+              if (nextKey.isEmpty() || endKey.compareTo(nextKey) <= 0) {
+                return CompletableFuture.completedFuture(result);
+              }
+              return scanAsync(cf, nextKey, endKey, limit - kvPairs.size(), result);
+            });
+  }
+
+  /**
+   * Run the non-blocking call, and fall back to the blocking call on the client executor when it
+   * fails. The blocking path owns region error handling and back off, so retries never sleep on a
+   * gRPC thread.
+   */
+  private <T> CompletableFuture<T> withSyncFallback(
+      Supplier<CompletableFuture<T>> asyncCall, Supplier<T> syncCall) {
+    CompletableFuture<T> future;
+    try {
+      future = asyncCall.get();
+    } catch (final RuntimeException e) {
+      // issuing the call may fail before any future exists, like looking up the region or store
+      future = new CompletableFuture<>();
+      future.completeExceptionally(e);
+    }
+    return future
+        .handle(
+            (result, e) -> {
+              if (e == null) {
+                return CompletableFuture.completedFuture(result);
+              }
+              if (logger.isDebugEnabled()) {
+                logger.debug("Async raw request failed, retrying in blocking mode", e);
+              }
+              return CompletableFuture.supplyAsync(syncCall, executors);
+            })
+        .thenCompose(Function.identity());
+  }
+
   /** A Batch containing the region, a list of keys and/or values to send */
   private final class Batch {
     private final TiRegion region;
@@ -193,6 +813,45 @@ public class RawKVClient implements AutoCloseable {
       this.keys = keys;
       this.values = values;
     }
+
+    public Batch(TiRegion region, List<ByteString> keys) {
+      this(region, keys, null);
+    }
+  }
+
+  /** A key range [startKey, endKey) clipped to a single region */
+  private final class RegionRange {
+    private final TiRegion region;
+    private final ByteString startKey;
+    private final ByteString endKey;
+
+    public RegionRange(TiRegion region, ByteString startKey, ByteString endKey) {
+      this.region = region;
+      this.startKey = startKey;
+      this.endKey = endKey;
+    }
+  }
+
+  /**
+   * Split range [startKey, endKey) according to region boundaries
+   *
+   * @param startKey start key, inclusive
+   * @param endKey end key, exclusive, ByteString.EMPTY means +INF
+   * @return ranges clipped to each region, in key order
+   */
+  private List<RegionRange> splitRangeByRegion(ByteString startKey, ByteString endKey) {
+    List<RegionRange> ranges = new ArrayList<>();
+    for (TiRegion region :
+        clientBuilder.getRegionManager().getRegionsInRange(startKey, endKey)) {
+      ByteString rangeStart =
+          FastByteComparisons.compareTo(region.getStartKey(), startKey) > 0
+              ? region.getStartKey()
+              : startKey;
+      ByteString rangeEnd =
+          compareEndKeys(region.getEndKey(), endKey) < 0 ? region.getEndKey() : endKey;
+      ranges.add(new RegionRange(region, rangeStart, rangeEnd));
+    }
+    return ranges;
   }
 
   /**
@@ -209,17 +868,22 @@ public class RawKVClient implements AutoCloseable {
       TiRegion region,
       List<ByteString> keys,
       List<ByteString> values,
-      int limit) {
+      int limit,
+      long maxBytes) {
     List<ByteString> tmpKeys = new ArrayList<>();
     List<ByteString> tmpValues = new ArrayList<>();
+    long tmpBytes = 0;
     for (int i = 0; i < keys.size(); i++) {
-      if (i >= limit) {
+      long size = keys.get(i).size() + values.get(i).size();
+      if (tmpKeys.size() >= limit || (!tmpKeys.isEmpty() && tmpBytes + size > maxBytes)) {
         batches.add(new Batch(region, tmpKeys, tmpValues));
-        tmpKeys.clear();
-        tmpValues.clear();
+        tmpKeys = new ArrayList<>();
+        tmpValues = new ArrayList<>();
+        tmpBytes = 0;
       }
       tmpKeys.add(keys.get(i));
       tmpValues.add(values.get(i));
+      tmpBytes += size;
     }
     if (!tmpKeys.isEmpty()) {
       batches.add(new Batch(region, tmpKeys, tmpValues));
@@ -227,23 +891,67 @@ public class RawKVClient implements AutoCloseable {
   }
 
   /**
-   * Group by list of keys according to its region
+   * Append batch of keys to list and split them according to batch limit
    *
+   * @param batches a grouped batch
+   * @param region region
    * @param keys keys
-   * @return a mapping of keys and their region
+   * @param limit batch max limit
    */
-  private Map<TiRegion, List<ByteString>> groupKeysByRegion(Set<ByteString> keys) {
-    Map<TiRegion, List<ByteString>> groups = new HashMap<>();
-    TiRegion lastRegion = null;
-    for (ByteString key : keys) {
-      if (lastRegion == null || !lastRegion.contains(key)) {
-        lastRegion = clientBuilder.getRegionManager().getRegionByKey(key);
+  private void appendBatches(
+      List<Batch> batches, TiRegion region, List<ByteString> keys, int limit) {
+    for (int start = 0; start < keys.size(); start += limit) {
+      batches.add(new Batch(region, keys.subList(start, Math.min(start + limit, keys.size()))));
+    }
+  }
+
+  /**
+   * Group by list of keys according to its region. A sorted copy of the keys is swept first, so
+   * that the keys of a region are consecutive and only one region lookup per region is needed.
+   *
+   * @param keys keys
+   * @return a mapping of keys and their region, regions in key order and the keys of each region
+   *     in the order of keys
+   */
+  @VisibleForTesting
+  Map<TiRegion, List<ByteString>> groupKeysByRegion(Collection<ByteString> keys) {
+    ByteString[] sortedKeys = keys.toArray(new ByteString[0]);
+    if (sortedKeys.length >= PARALLEL_SORT_THRESHOLD) {
+      Arrays.parallelSort(sortedKeys, FastByteComparisons::compareTo);
+    } else {
+      Arrays.sort(sortedKeys, FastByteComparisons::compareTo);
+    }
+    Map<TiRegion, List<ByteString>> groups = new LinkedHashMap<>();
+    // regions found, in key order
+    List<TiRegion> regions = new ArrayList<>();
+    for (ByteString key : sortedKeys) {
+      if (regions.isEmpty() || !regions.get(regions.size() - 1).contains(key)) {
+        TiRegion region = clientBuilder.getRegionManager().getRegionByKey(key);
+        regions.add(region);
+        groups.computeIfAbsent(region, k -> new ArrayList<>());
       }
-      groups.computeIfAbsent(lastRegion, k -> new ArrayList<>()).add(key);
+    }
+    for (ByteString key : keys) {
+      groups.get(regionOf(regions, key)).add(key);
     }
     return groups;
   }
 
+  /** Find the region holding key among regions in key order, the last one starting at or before */
+  private static TiRegion regionOf(List<TiRegion> regions, ByteString key) {
+    int low = 0;
+    int high = regions.size() - 1;
+    while (low < high) {
+      int mid = (low + high + 1) >>> 1;
+      if (FastByteComparisons.compareTo(regions.get(mid).getStartKey(), key) <= 0) {
+        low = mid;
+      } else {
+        high = mid - 1;
+      }
+    }
+    return regions.get(low);
+  }
+
   private static Map<ByteString, ByteString> mapKeysToValues(
       List<ByteString> keys, List<ByteString> values) {
     Map<ByteString, ByteString> map = new HashMap<>();
@@ -260,35 +968,169 @@ public class RawKVClient implements AutoCloseable {
    * @param batches list of batch to send
    */
   private void sendBatchPut(BackOffer backOffer, List<Batch> batches) {
+    List<Callable<Void>> tasks = new ArrayList<>();
+    for (Batch batch : batches) {
+      tasks.add(
+          () -> {
+            doSendBatchPut(ConcreteBackOffer.create(backOffer), batch);
+            return null;
+          });
+    }
+    submitAndWait(tasks);
+  }
+
+  private void doSendBatchPut(BackOffer backOffer, Batch batch) {
+    RegionStoreClient client = clientBuilder.build(batch.region);
+    try {
+      client.rawBatchPut(backOffer, toKvPairs(batch));
+    } catch (final TiKVException e) {
+      if (isRaftEntryTooLarge(e)) {
+        int size = batch.keys.size();
+        if (size <= 1) {
+          throw e;
+        }
+        // retrying the same batch cannot succeed, send it as two halves instead
+        logger.warn(String.format("Halving BatchPutRequest of %d pairs for raft entry size", size));
+        int mid = size / 2;
+        doSendBatchPut(
+            backOffer,
+            new Batch(batch.region, batch.keys.subList(0, mid), batch.values.subList(0, mid)));
+        doSendBatchPut(
+            backOffer,
+            new Batch(
+                batch.region, batch.keys.subList(mid, size), batch.values.subList(mid, size)));
+        return;
+      }
+      backOffer.doBackOff(BackOffFunction.BackOffFuncType.BoRegionMiss, e);
+      logger.warn("ReSplitting ranges for BatchPutRequest");
+      // only pairs of the failed batch are regrouped, other batches are not affected
+      batchPut(backOffer, batch.keys, batch.values);
+    }
+  }
+
+  /**
+   * Send batchGet request concurrently
+   *
+   * @param backOffer current backOffer
+   * @param batches list of batch to send
+   * @return key-value pairs found
+   */
+  private List<Kvrpcpb.KvPair> sendBatchGet(BackOffer backOffer, List<Batch> batches) {
+    List<Callable<List<Kvrpcpb.KvPair>>> tasks = new ArrayList<>();
+    for (Batch batch : batches) {
+      tasks.add(() -> doSendBatchGet(ConcreteBackOffer.create(backOffer), batch));
+    }
+    List<Kvrpcpb.KvPair> result = new ArrayList<>();
+    for (List<Kvrpcpb.KvPair> kvPairs : submitAndWait(tasks)) {
+      result.addAll(kvPairs);
+    }
+    return result;
+  }
+
+  private List<Kvrpcpb.KvPair> doSendBatchGet(BackOffer backOffer, Batch batch) {
+    RegionStoreClient client = clientBuilder.build(batch.region);
+    try {
+      return client.rawBatchGet(backOffer, batch.keys);
+    } catch (final TiKVException e) {
+      backOffer.doBackOff(BackOffFunction.BackOffFuncType.BoRegionMiss, e);
+      logger.warn("ReSplitting ranges for BatchGetRequest");
+      // only keys of the failed batch are regrouped, other batches are not affected
+      List<Kvrpcpb.KvPair> result = new ArrayList<>();
+      for (Map.Entry<TiRegion, List<ByteString>> entry :
+          groupKeysByRegion(batch.keys).entrySet()) {
+        result.addAll(doSendBatchGet(backOffer, new Batch(entry.getKey(), entry.getValue())));
+      }
+      return result;
+    }
+  }
+
+  /**
+   * Send batchDelete request concurrently
+   *
+   * @param backOffer current backOffer
+   * @param batches list of batch to send
+   */
+  private void sendBatchDelete(BackOffer backOffer, List<Batch> batches) {
+    List<Callable<Void>> tasks = new ArrayList<>();
     for (Batch batch : batches) {
-      completionService.submit(
+      tasks.add(
           () -> {
-            RegionStoreClient client = clientBuilder.build(batch.region);
-            BackOffer singleBatchBackOffer = ConcreteBackOffer.create(backOffer);
-            List<Kvrpcpb.KvPair> kvPairs = new ArrayList<>();
-            for (int i = 0; i < batch.keys.size(); i++) {
-              kvPairs.add(
-                  Kvrpcpb.KvPair.newBuilder()
-                      .setKey(batch.keys.get(i))
-                      .setValue(batch.values.get(i))
-                      .build());
-            }
-            try {
-              client.rawBatchPut(singleBatchBackOffer, kvPairs);
-            } catch (final TiKVException e) {
-              // TODO: any elegant way to re-split the ranges if fails?
-              singleBatchBackOffer.doBackOff(BackOffFunction.BackOffFuncType.BoRegionMiss, e);
-              logger.warn("ReSplitting ranges for BatchPutRequest");
-              // recursive calls
-              batchPut(singleBatchBackOffer, batch.keys, batch.values);
-            }
+            doSendBatchDelete(ConcreteBackOffer.create(backOffer), batch);
             return null;
           });
     }
+    submitAndWait(tasks);
+  }
+
+  private void doSendBatchDelete(BackOffer backOffer, Batch batch) {
+    RegionStoreClient client = clientBuilder.build(batch.region);
+    try {
+      client.rawBatchDelete(backOffer, batch.keys);
+    } catch (final TiKVException e) {
+      backOffer.doBackOff(BackOffFunction.BackOffFuncType.BoRegionMiss, e);
+      logger.warn("ReSplitting ranges for BatchDeleteRequest");
+      // only keys of the failed batch are regrouped, other batches are not affected
+      for (Map.Entry<TiRegion, List<ByteString>> entry :
+          groupKeysByRegion(batch.keys).entrySet()) {
+        doSendBatchDelete(backOffer, new Batch(entry.getKey(), entry.getValue()));
+      }
+    }
+  }
+
+  private void doSendDeleteRange(BackOffer backOffer, RegionRange range) {
+    RegionStoreClient client = clientBuilder.build(range.region);
+    try {
+      client.rawDeleteRange(backOffer, range.startKey, range.endKey);
+    } catch (final TiKVException e) {
+      backOffer.doBackOff(BackOffFunction.BackOffFuncType.BoRegionMiss, e);
+      logger.warn("ReSplitting ranges for DeleteRangeRequest");
+      for (RegionRange subRange : splitRangeByRegion(range.startKey, range.endKey)) {
+        doSendDeleteRange(backOffer, subRange);
+      }
+    }
+  }
+
+  private long doCount(ByteString cf, RegionRange range) {
+    // the iterator follows the range across regions split since it was computed
+    try (CloseableIterator<Kvrpcpb.KvPair> iterator =
+        rawScanIterator(conf, clientBuilder, cf, range.startKey, range.endKey, true)) {
+      long count = 0;
+      while (iterator.hasNext()) {
+        iterator.next();
+        count++;
+      }
+      return count;
+    }
+  }
+
+  private static boolean isRaftEntryTooLarge(TiKVException e) {
+    return e instanceof RegionException
+        && ((RegionException) e).getRegionErr().hasRaftEntryTooLarge();
+  }
+
+  private static <T> T waitFor(CompletableFuture<T> future) {
     try {
-      for (int i = 0; i < batches.size(); i++) {
-        completionService.take().get(BackOffer.rawkvMaxBackoff, TimeUnit.SECONDS);
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new TiKVException("Current thread interrupted.", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof TiKVException) {
+        throw (TiKVException) e.getCause();
       }
+      throw new TiKVException("Execution exception met.", e);
+    }
+  }
+
+  /**
+   * Run tasks on the client executor and wait for all of them
+   *
+   * @param tasks tasks to run
+   * @return results of tasks, in the same order
+   */
+  private <T> List<T> submitAndWait(List<Callable<T>> tasks) {
+    try {
+      return executors.invokeAll(tasks, BackOffer.rawkvMaxBackoff, TimeUnit.SECONDS);
     } catch (InterruptedException e) {
       Thread.currentThread().interrupt();
       throw new TiKVException("Current thread interrupted.", e);
@@ -299,22 +1141,51 @@ public class RawKVClient implements AutoCloseable {
     }
   }
 
-  private Iterator<Kvrpcpb.KvPair> rawScanIterator(
+  private static List<Kvrpcpb.KvPair> toKvPairs(Batch batch) {
+    List<Kvrpcpb.KvPair> kvPairs = new ArrayList<>();
+    for (int i = 0; i < batch.keys.size(); i++) {
+      kvPairs.add(
+          Kvrpcpb.KvPair.newBuilder()
+              .setKey(batch.keys.get(i))
+              .setValue(batch.values.get(i))
+              .build());
+    }
+    return kvPairs;
+  }
+
+  private CloseableIterator<Kvrpcpb.KvPair> rawScanIterator(
       TiConfiguration conf,
       RegionStoreClientBuilder builder,
       ByteString cf,
       ByteString startKey,
-      ByteString endKey) {
-    return new RawScanIterator(conf, builder, cf, startKey, endKey, Integer.MAX_VALUE);
+      ByteString endKey,
+      boolean keyOnly) {
+    return new RawScanIterator(
+        conf, builder, cf, startKey, endKey, Integer.MAX_VALUE, keyOnly, executors);
   }
 
-  private Iterator<Kvrpcpb.KvPair> rawScanIterator(
+  private CloseableIterator<Kvrpcpb.KvPair> rawScanIterator(
       TiConfiguration conf,
       RegionStoreClientBuilder builder,
       ByteString cf,
       ByteString startKey,
-      int limit) {
-    return new RawScanIterator(conf, builder, cf, startKey, ByteString.EMPTY, limit);
+      int limit,
+      boolean keyOnly) {
+    return new RawScanIterator(
+        conf, builder, cf, startKey, ByteString.EMPTY, limit, keyOnly, executors);
+  }
+
+  private static Stream<Kvrpcpb.KvPair> toStream(CloseableIterator<Kvrpcpb.KvPair> iterator) {
+    return StreamSupport.stream(
+            Spliterators.spliteratorUnknownSize(
+                iterator, Spliterator.ORDERED | Spliterator.NONNULL),
+            false)
+        .onClose(iterator::close);
+  }
+
+  /** Max bytes of keys and values in a batch put request */
+  private long rawBatchPutMaxBytes() {
+    return Math.min(conf.getRawBatchPutRequestMaxBytes(), conf.getMaxFrameSize() / 2);
   }
 
   private BackOffer defaultBackOff() {
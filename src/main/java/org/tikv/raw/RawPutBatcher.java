@@ -0,0 +1,99 @@
+/*
+ * Copyright 2018 PingCAP, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tikv.raw;
+
+import com.google.protobuf.ByteString;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import org.tikv.common.region.RegionManager;
+import org.tikv.common.region.TiRegion;
+
+/**
+ * Gathers concurrent single puts headed to the same region for a short window, or until their size
+ * reaches a limit, and writes them with one raw batch put. Each caller is completed once the batch
+ * holding its key-value pair is written.
+ */
+final class RawPutBatcher extends RegionBatcher<RawPutBatcher.PendingBatch> {
+  /** Writes the key-value pairs gathered for a region */
+  interface Sender {
+    void send(TiRegion region, List<ByteString> keys, List<ByteString> values);
+  }
+
+  private final Sender sender;
+  private final long maxBytes;
+
+  RawPutBatcher(
+      RegionManager regionManager,
+      Executor executor,
+      ScheduledExecutorService scheduler,
+      Sender sender,
+      long windowMs,
+      long maxBytes) {
+    super(regionManager, executor, scheduler, windowMs);
+    this.sender = sender;
+    this.maxBytes = maxBytes;
+  }
+
+  final class PendingBatch extends RegionBatcher.Batch {
+    private final List<ByteString> keys = new ArrayList<>();
+    private final List<ByteString> values = new ArrayList<>();
+    private final CompletableFuture<Void> future = new CompletableFuture<>();
+    private long bytes = 0;
+
+    private PendingBatch(TiRegion region) {
+      super(region);
+    }
+
+    @Override
+    boolean isFull() {
+      return bytes >= maxBytes;
+    }
+
+    @Override
+    void send() {
+      try {
+        sender.send(region, keys, values);
+        future.complete(null);
+      } catch (Exception e) {
+        future.completeExceptionally(e);
+      }
+    }
+  }
+
+  @Override
+  PendingBatch newBatch(TiRegion region) {
+    return new PendingBatch(region);
+  }
+
+  /**
+   * Add a put to the batch of its region
+   *
+   * @return a future completed when the batch holding the put is written
+   */
+  CompletableFuture<Void> put(ByteString key, ByteString value) {
+    return add(
+        key,
+        batch -> {
+          batch.keys.add(key);
+          batch.values.add(value);
+          batch.bytes += key.size() + value.size();
+          return batch.future;
+        });
+  }
+}
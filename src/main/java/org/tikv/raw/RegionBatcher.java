@@ -0,0 +1,143 @@
+/*
+ * Copyright 2018 PingCAP, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tikv.raw;
+
+import com.google.protobuf.ByteString;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import org.tikv.common.exception.TiKVException;
+import org.tikv.common.region.RegionManager;
+import org.tikv.common.region.TiRegion;
+
+/**
+ * Gathers concurrent requests for keys in the same region for a short window, or until the batch is
+ * full, and sends them as one batch request on the executor. Subclasses define what a batch holds
+ * and how it is sent.
+ */
+abstract class RegionBatcher<B extends RegionBatcher.Batch> implements AutoCloseable {
+  /** Requests gathered for a region */
+  abstract static class Batch {
+    final TiRegion region;
+    // flushes the batch at the end of its window, guarded by the batcher
+    ScheduledFuture<?> window;
+
+    Batch(TiRegion region) {
+      this.region = region;
+    }
+
+    /** Whether the batch is sent at once instead of at the end of its window */
+    abstract boolean isFull();
+
+    /** Send the batch and complete its callers, or fail them if it cannot be sent */
+    abstract void send();
+  }
+
+  private final RegionManager regionManager;
+  private final Executor executor;
+  private final long windowMs;
+  private final ScheduledExecutorService scheduler;
+  // batches still gathering requests, by region id, guarded by this
+  private final Map<Long, B> pending = new HashMap<>();
+  // guarded by this
+  private boolean closed = false;
+
+  /** @param scheduler timer ending batch windows, which is shared and not shut down on close */
+  RegionBatcher(
+      RegionManager regionManager,
+      Executor executor,
+      ScheduledExecutorService scheduler,
+      long windowMs) {
+    this.regionManager = regionManager;
+    this.executor = executor;
+    this.scheduler = scheduler;
+    this.windowMs = windowMs;
+  }
+
+  /** Create an empty batch of region */
+  abstract B newBatch(TiRegion region);
+
+  /**
+   * Add a request for key to the batch of its region
+   *
+   * @param request adds the request to the batch and returns the future of its caller
+   * @return the future returned by request
+   */
+  <T> CompletableFuture<T> add(ByteString key, Function<B, CompletableFuture<T>> request) {
+    TiRegion region = regionManager.getRegionByKey(key);
+    B batch;
+    CompletableFuture<T> future;
+    boolean full;
+    synchronized (this) {
+      if (closed) {
+        throw new TiKVException("Cannot send requests through a closed raw client");
+      }
+      batch = pending.get(region.getId());
+      if (batch == null) {
+        B newBatch = newBatch(region);
+        pending.put(region.getId(), newBatch);
+        newBatch.window =
+            scheduler.schedule(() -> flush(newBatch), windowMs, TimeUnit.MILLISECONDS);
+        batch = newBatch;
+      }
+      future = request.apply(batch);
+      full = batch.isFull();
+      if (full) {
+        pending.remove(region.getId());
+        batch.window.cancel(false);
+      }
+    }
+    if (full) {
+      B fullBatch = batch;
+      executor.execute(fullBatch::send);
+    }
+    return future;
+  }
+
+  private void flush(B batch) {
+    synchronized (this) {
+      // the batch has already been sent if it filled up within the window
+      if (!pending.remove(batch.region.getId(), batch)) {
+        return;
+      }
+    }
+    executor.execute(batch::send);
+  }
+
+  /** Sends the batches still gathering requests and cancels their windows */
+  @Override
+  public void close() {
+    List<B> batches;
+    synchronized (this) {
+      closed = true;
+      batches = new ArrayList<>(pending.values());
+      pending.clear();
+      for (B batch : batches) {
+        batch.window.cancel(false);
+      }
+    }
+    for (B batch : batches) {
+      batch.send();
+    }
+  }
+}
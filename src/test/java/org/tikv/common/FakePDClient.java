@@ -0,0 +1,147 @@
+/*
+ * Copyright 2018 PingCAP, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tikv.common;
+
+import static org.junit.Assert.assertEquals;
+
+import com.google.common.collect.ImmutableList;
+import com.google.protobuf.ByteString;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.tikv.common.meta.TiTimestamp;
+import org.tikv.common.region.TiRegion;
+import org.tikv.common.util.BackOffer;
+import org.tikv.kvproto.Kvrpcpb;
+import org.tikv.kvproto.Metapb;
+import org.tikv.kvproto.Metapb.Store;
+
+/**
+ * A PD client serving a fixed set of regions and stores from memory and counting region lookups,
+ * lookups of a blocked region wait until it is released
+ */
+public class FakePDClient implements ReadOnlyPDClient {
+  private final List<TiRegion> regions;
+  private final List<Store> stores;
+  private final AtomicInteger regionLookups = new AtomicInteger();
+  private volatile long blockedRegionId = -1;
+  private volatile CountDownLatch released = new CountDownLatch(0);
+
+  public FakePDClient(List<TiRegion> regions, List<Store> stores) {
+    this.regions = ImmutableList.copyOf(regions);
+    this.stores = ImmutableList.copyOf(stores);
+  }
+
+  public FakePDClient(List<TiRegion> regions) {
+    this(regions, ImmutableList.of());
+  }
+
+  /** A raw region led by a peer on storeId, of the same id as the region */
+  public static TiRegion makeRegion(
+      long id, ByteString startKey, ByteString endKey, long storeId) {
+    Metapb.Peer leader = GrpcUtils.makePeer(id, storeId);
+    return new TiRegion(
+        GrpcUtils.makeRegion(
+            id, startKey, endKey, GrpcUtils.makeRegionEpoch(1026, 1027), leader),
+        leader,
+        Kvrpcpb.IsolationLevel.RC,
+        Kvrpcpb.CommandPri.Low,
+        TiConfiguration.KVMode.RAW);
+  }
+
+  public int getRegionLookups() {
+    return regionLookups.get();
+  }
+
+  public void block(long regionId) {
+    released = new CountDownLatch(1);
+    blockedRegionId = regionId;
+  }
+
+  public void release() {
+    released.countDown();
+  }
+
+  public void awaitLookups(int count) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 10000;
+    while (regionLookups.get() < count && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertEquals(count, regionLookups.get());
+  }
+
+  @Override
+  public TiRegion getRegionByKey(BackOffer backOffer, ByteString key) {
+    regionLookups.incrementAndGet();
+    for (TiRegion region : regions) {
+      if (region.contains(key)) {
+        if (region.getId() == blockedRegionId) {
+          try {
+            released.await(30, TimeUnit.SECONDS);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        }
+        return region;
+      }
+    }
+    throw new IllegalArgumentException("No region holds the key");
+  }
+
+  @Override
+  public TiTimestamp getTimestamp(BackOffer backOffer) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public Future<TiRegion> getRegionByKeyAsync(BackOffer backOffer, ByteString key) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public TiRegion getRegionByID(BackOffer backOffer, long id) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public Future<TiRegion> getRegionByIDAsync(BackOffer backOffer, long id) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public List<TiRegion> scanRegions(
+      BackOffer backOffer, ByteString startKey, ByteString endKey, int limit) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public Store getStore(BackOffer backOffer, long storeId) {
+    for (Store store : stores) {
+      if (store.getId() == storeId) {
+        return store;
+      }
+    }
+    throw new IllegalArgumentException("No store of id " + storeId);
+  }
+
+  @Override
+  public Future<Store> getStoreAsync(BackOffer backOffer, long storeId) {
+    return CompletableFuture.completedFuture(getStore(backOffer, storeId));
+  }
+}
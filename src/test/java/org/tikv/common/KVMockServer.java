@@ -45,9 +45,14 @@ public class KVMockServer extends TikvGrpc.TikvImplBase {
 
   private int port;
   private Server server;
-  private TiRegion region;
+  // regions served, by id
+  private final Map<Long, TiRegion> regions = new HashMap<>();
   private TreeMap<Key, ByteString> dataMap = new TreeMap<>();
   private Map<ByteString, Integer> errorMap = new HashMap<>();
+  // raw batch puts whose keys and values take more bytes than this fail as too large
+  private long raftEntryMaxBytes = Long.MAX_VALUE;
+  // number of pairs of each raw batch put written
+  private final List<Integer> rawBatchPutSizes = Collections.synchronizedList(new ArrayList<>());
 
   // for KV error
   public static final int ABORT = 1;
@@ -66,11 +71,11 @@ public class KVMockServer extends TikvGrpc.TikvImplBase {
     return port;
   }
 
-  public void put(ByteString key, ByteString value) {
+  public synchronized void put(ByteString key, ByteString value) {
     dataMap.put(toRawKey(key), value);
   }
 
-  public void remove(ByteString key) {
+  public synchronized void remove(ByteString key) {
     dataMap.remove(toRawKey(key));
   }
 
@@ -86,17 +91,33 @@ public class KVMockServer extends TikvGrpc.TikvImplBase {
     errorMap.put(ByteString.copyFromUtf8(key), code);
   }
 
+  public void setRaftEntryMaxBytes(long raftEntryMaxBytes) {
+    this.raftEntryMaxBytes = raftEntryMaxBytes;
+  }
+
+  public List<Integer> getRawBatchPutSizes() {
+    return rawBatchPutSizes;
+  }
+
   public void clearAllMap() {
     dataMap.clear();
     errorMap.clear();
+    rawBatchPutSizes.clear();
   }
 
-  private void verifyContext(Context context) throws Exception {
-    if (context.getRegionId() != region.getId()
+  /** Serve region as well, keys are shared by all regions served */
+  public synchronized void addRegion(TiRegion region) {
+    regions.put(region.getId(), region);
+  }
+
+  private synchronized TiRegion verifyContext(Context context) throws Exception {
+    TiRegion region = regions.get(context.getRegionId());
+    if (region == null
         || !context.getRegionEpoch().equals(region.getRegionEpoch())
         || !context.getPeer().equals(region.getLeader())) {
       throw new Exception();
     }
+    return region;
   }
 
   @Override
@@ -114,7 +135,14 @@ public class KVMockServer extends TikvGrpc.TikvImplBase {
         setErrorInfo(errorCode, errBuilder);
         builder.setRegionError(errBuilder.build());
       } else {
-        builder.setValue(dataMap.get(toRawKey(key)));
+        ByteString value;
+        synchronized (this) {
+          value = dataMap.get(toRawKey(key));
+        }
+        // like TiKV, a missing key has an empty value
+        if (value != null) {
+          builder.setValue(value);
+        }
       }
       responseObserver.onNext(builder.build());
       responseObserver.onCompleted();
@@ -138,6 +166,87 @@ public class KVMockServer extends TikvGrpc.TikvImplBase {
         setErrorInfo(errorCode, errBuilder);
         builder.setRegionError(errBuilder.build());
         // builder.setError("");
+      } else {
+        synchronized (this) {
+          dataMap.put(toRawKey(key), request.getValue());
+        }
+      }
+      responseObserver.onNext(builder.build());
+      responseObserver.onCompleted();
+    } catch (Exception e) {
+      responseObserver.onError(Status.INTERNAL.asRuntimeException());
+    }
+  }
+
+  @Override
+  public void rawBatchPut(
+      org.tikv.kvproto.Kvrpcpb.RawBatchPutRequest request,
+      io.grpc.stub.StreamObserver<org.tikv.kvproto.Kvrpcpb.RawBatchPutResponse> responseObserver) {
+    try {
+      verifyContext(request.getContext());
+
+      Kvrpcpb.RawBatchPutResponse.Builder builder = Kvrpcpb.RawBatchPutResponse.newBuilder();
+      long bytes = 0;
+      for (Kvrpcpb.KvPair pair : request.getPairsList()) {
+        bytes += pair.getKey().size() + pair.getValue().size();
+      }
+      if (bytes > raftEntryMaxBytes) {
+        Errorpb.Error.Builder errBuilder = Errorpb.Error.newBuilder();
+        setErrorInfo(RAFT_ENTRY_TOO_LARGE, errBuilder);
+        builder.setRegionError(errBuilder.build());
+      } else {
+        synchronized (this) {
+          for (Kvrpcpb.KvPair pair : request.getPairsList()) {
+            dataMap.put(toRawKey(pair.getKey()), pair.getValue());
+          }
+        }
+        rawBatchPutSizes.add(request.getPairsCount());
+      }
+      responseObserver.onNext(builder.build());
+      responseObserver.onCompleted();
+    } catch (Exception e) {
+      responseObserver.onError(Status.INTERNAL.asRuntimeException());
+    }
+  }
+
+  @Override
+  public void rawScan(
+      org.tikv.kvproto.Kvrpcpb.RawScanRequest request,
+      io.grpc.stub.StreamObserver<org.tikv.kvproto.Kvrpcpb.RawScanResponse> responseObserver) {
+    try {
+      TiRegion region = verifyContext(request.getContext());
+      ByteString key = request.getStartKey();
+
+      Kvrpcpb.RawScanResponse.Builder builder = Kvrpcpb.RawScanResponse.newBuilder();
+      Integer errorCode = errorMap.remove(key);
+      if (errorCode != null) {
+        Errorpb.Error.Builder errBuilder = Errorpb.Error.newBuilder();
+        setErrorInfo(errorCode, errBuilder);
+        builder.setRegionError(errBuilder.build());
+      } else {
+        NavigableMap<Key, ByteString> kvs;
+        synchronized (this) {
+          kvs = new TreeMap<>(dataMap);
+        }
+        if (request.getReverse()) {
+          // like TiKV, an empty start key is not taken as +INF: nothing is before it
+          kvs = kvs.headMap(toRawKey(key), false).descendingMap();
+          kvs = clip(kvs, request.getEndKey(), region.getStartKey(), true);
+        } else {
+          kvs = kvs.tailMap(toRawKey(key), true);
+          kvs = clip(kvs, request.getEndKey(), region.getEndKey(), false);
+        }
+        for (Map.Entry<Key, ByteString> kv : kvs.entrySet()) {
+          if (builder.getKvsCount() >= request.getLimit()) {
+            break;
+          }
+          Kvrpcpb.KvPair.Builder pair =
+              Kvrpcpb.KvPair.newBuilder().setKey(kv.getKey().toByteString());
+          if (!request.getKeyOnly()) {
+            pair.setValue(kv.getValue());
+          }
+          builder.addKvs(pair);
+        }
       }
       responseObserver.onNext(builder.build());
       responseObserver.onCompleted();
@@ -146,6 +255,23 @@ public class KVMockServer extends TikvGrpc.TikvImplBase {
     }
   }
 
+  /**
+   * Drop pairs of kvs past the end key of the request and past the bound of the region, both
+   * ignored if empty. Reverse scans stop below their end key and the region start key, inclusive.
+   */
+  private static NavigableMap<Key, ByteString> clip(
+      NavigableMap<Key, ByteString> kvs,
+      ByteString endKey,
+      ByteString regionBound,
+      boolean reverse) {
+    for (ByteString bound : new ByteString[] {endKey, regionBound}) {
+      if (!bound.isEmpty()) {
+        kvs = kvs.headMap(toRawKey(bound), reverse);
+      }
+    }
+    return kvs;
+  }
+
   private void setErrorInfo(int errorCode, Errorpb.Error.Builder errBuilder) {
     if (errorCode == NOT_LEADER) {
       errBuilder.setNotLeader(Errorpb.NotLeader.getDefaultInstance());
@@ -180,6 +306,10 @@ public class KVMockServer extends TikvGrpc.TikvImplBase {
       if (errorCode != null) {
         setErrorInfo(errorCode, errBuilder);
         builder.setRegionError(errBuilder.build());
+      } else {
+        synchronized (this) {
+          dataMap.remove(toRawKey(key));
+        }
       }
       responseObserver.onNext(builder.build());
       responseObserver.onCompleted();
@@ -352,7 +482,7 @@ public class KVMockServer extends TikvGrpc.TikvImplBase {
     }
     server = ServerBuilder.forPort(port).addService(this).build().start();
 
-    this.region = region;
+    addRegion(region);
     Runtime.getRuntime().addShutdownHook(new Thread(KVMockServer.this::stop));
     return port;
   }
@@ -17,8 +17,17 @@ package org.tikv.common;
 
 import static org.junit.Assert.*;
 
+import com.google.common.collect.ImmutableList;
 import com.google.protobuf.ByteString;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -92,6 +101,195 @@ public class RegionManagerTest {
     }
   }
 
+  @Test
+  public void getRegionByKeyAfterMerge() throws Exception {
+    ByteString startKey = ByteString.copyFrom(new byte[] {1});
+    ByteString endKey = ByteString.copyFrom(new byte[] {10});
+    ByteString mergedEndKey = ByteString.copyFrom(new byte[] {20});
+    ByteString searchKey = ByteString.copyFrom(new byte[] {5});
+    ByteString searchKeyMerged = ByteString.copyFrom(new byte[] {15});
+    int confVer = 1026;
+    int ver = 1027;
+    long regionId = 233;
+    server.addGetRegionResp(
+        GrpcUtils.makeGetRegionResponse(
+            server.getClusterId(),
+            GrpcUtils.makeRegion(
+                regionId,
+                GrpcUtils.encodeKey(startKey.toByteArray()),
+                GrpcUtils.encodeKey(endKey.toByteArray()),
+                GrpcUtils.makeRegionEpoch(confVer, ver),
+                GrpcUtils.makePeer(1, 10),
+                GrpcUtils.makePeer(2, 20))));
+    server.addGetRegionResp(
+        GrpcUtils.makeGetRegionResponse(
+            server.getClusterId(),
+            GrpcUtils.makeRegion(
+                regionId + 1,
+                GrpcUtils.encodeKey(startKey.toByteArray()),
+                GrpcUtils.encodeKey(mergedEndKey.toByteArray()),
+                GrpcUtils.makeRegionEpoch(confVer, ver + 1),
+                GrpcUtils.makePeer(1, 10),
+                GrpcUtils.makePeer(2, 20))));
+    TiRegion region = mgr.getRegionByKey(searchKey);
+    assertEquals(region.getId(), regionId);
+
+    // the merged region replaces the cached one it overlaps
+    TiRegion merged = mgr.getRegionByKey(searchKeyMerged);
+    assertEquals(merged.getId(), regionId + 1);
+    assertEquals(merged, mgr.getRegionByKey(searchKey));
+  }
+
+  @Test
+  public void loadSnapshot() throws Exception {
+    ByteString startKey = ByteString.copyFrom(new byte[] {1});
+    ByteString endKey = ByteString.copyFrom(new byte[] {10});
+    ByteString searchKey = ByteString.copyFrom(new byte[] {5});
+    int confVer = 1026;
+    int ver = 1027;
+    long regionId = 233;
+    server.addGetRegionResp(
+        GrpcUtils.makeGetRegionResponse(
+            server.getClusterId(),
+            GrpcUtils.makeRegion(
+                regionId,
+                GrpcUtils.encodeKey(startKey.toByteArray()),
+                GrpcUtils.encodeKey(endKey.toByteArray()),
+                GrpcUtils.makeRegionEpoch(confVer, ver),
+                GrpcUtils.makePeer(1, 10),
+                GrpcUtils.makePeer(2, 20))));
+    TiRegion region = mgr.getRegionByKey(searchKey);
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    mgr.saveSnapshot(out);
+    RegionManager loaded = new RegionManager(session.getPDClient());
+    loaded.loadSnapshot(new ByteArrayInputStream(out.toByteArray()), session.getConf());
+
+    // served from the snapshot, PD has no more responses
+    TiRegion loadedRegion = loaded.getRegionByKey(searchKey);
+    assertEquals(region.getId(), loadedRegion.getId());
+    assertEquals(region.getStartKey(), loadedRegion.getStartKey());
+    assertEquals(region.getEndKey(), loadedRegion.getEndKey());
+    assertEquals(region.getRegionEpoch(), loadedRegion.getRegionEpoch());
+  }
+
+  @Test
+  public void evictRegions() throws Exception {
+    ByteString firstKey = ByteString.copyFrom(new byte[] {1});
+    ByteString secondKey = ByteString.copyFrom(new byte[] {10});
+    ByteString endKey = ByteString.copyFrom(new byte[] {20});
+    int confVer = 1026;
+    int ver = 1027;
+    long regionId = 233;
+    server.addGetRegionResp(
+        GrpcUtils.makeGetRegionResponse(
+            server.getClusterId(),
+            GrpcUtils.makeRegion(
+                regionId,
+                GrpcUtils.encodeKey(firstKey.toByteArray()),
+                GrpcUtils.encodeKey(secondKey.toByteArray()),
+                GrpcUtils.makeRegionEpoch(confVer, ver),
+                GrpcUtils.makePeer(1, 10),
+                GrpcUtils.makePeer(2, 20))));
+    server.addGetRegionResp(
+        GrpcUtils.makeGetRegionResponse(
+            server.getClusterId(),
+            GrpcUtils.makeRegion(
+                regionId + 1,
+                GrpcUtils.encodeKey(secondKey.toByteArray()),
+                GrpcUtils.encodeKey(endKey.toByteArray()),
+                GrpcUtils.makeRegionEpoch(confVer, ver),
+                GrpcUtils.makePeer(1, 10),
+                GrpcUtils.makePeer(2, 20))));
+    TiConfiguration conf = TiConfiguration.createDefault("127.0.0.1:" + server.port);
+    conf.setRegionCacheMaxEntries(1);
+    RegionManager bounded = new RegionManager(session.getPDClient(), conf);
+
+    bounded.getRegionByKey(firstKey);
+    assertEquals(0, bounded.getEvictedRegionCount());
+    bounded.getRegionByKey(secondKey);
+    assertEquals(1, bounded.getEvictedRegionCount());
+    assertTrue(bounded.getEvictedRegionBytes() > 0);
+  }
+
+  @Test
+  public void updateRegionFromErrors() throws Exception {
+    ByteString startKey = ByteString.copyFrom(new byte[] {1});
+    ByteString splitKey = ByteString.copyFrom(new byte[] {5});
+    ByteString endKey = ByteString.copyFrom(new byte[] {10});
+    ByteString searchKey = ByteString.copyFrom(new byte[] {7});
+    int confVer = 1026;
+    int ver = 1027;
+    long regionId = 233;
+    server.addGetRegionResp(
+        GrpcUtils.makeGetRegionResponse(
+            server.getClusterId(),
+            GrpcUtils.makeRegion(
+                regionId,
+                GrpcUtils.encodeKey(startKey.toByteArray()),
+                GrpcUtils.encodeKey(endKey.toByteArray()),
+                GrpcUtils.makeRegionEpoch(confVer, ver),
+                GrpcUtils.makePeer(1, 10),
+                GrpcUtils.makePeer(2, 20))));
+    TiRegion region = mgr.getRegionByKey(searchKey);
+    assertEquals(10, region.getLeader().getStoreId());
+
+    // the new leader is cached in place, PD has no more responses
+    assertTrue(mgr.checkAndDropLeader(regionId, 20));
+    assertEquals(20, mgr.getRegionByKey(searchKey).getLeader().getStoreId());
+
+    mgr.onRegionEpochNotMatch(
+        mgr.getRegionById(regionId),
+        ImmutableList.of(
+            GrpcUtils.makeRegion(
+                regionId,
+                GrpcUtils.encodeKey(startKey.toByteArray()),
+                GrpcUtils.encodeKey(splitKey.toByteArray()),
+                GrpcUtils.makeRegionEpoch(confVer, ver + 1),
+                GrpcUtils.makePeer(1, 10),
+                GrpcUtils.makePeer(2, 20)),
+            GrpcUtils.makeRegion(
+                regionId + 1,
+                GrpcUtils.encodeKey(splitKey.toByteArray()),
+                GrpcUtils.encodeKey(endKey.toByteArray()),
+                GrpcUtils.makeRegionEpoch(confVer, ver + 1),
+                GrpcUtils.makePeer(3, 10),
+                GrpcUtils.makePeer(4, 20))));
+    TiRegion split = mgr.getRegionByKey(searchKey);
+    assertEquals(regionId + 1, split.getId());
+    assertEquals(splitKey, split.getStartKey());
+    assertEquals(20, split.getLeader().getStoreId());
+    assertEquals(splitKey, mgr.getRegionByKey(startKey).getEndKey());
+  }
+
+  @Test
+  public void invalidateAllRegionForStore() throws Exception {
+    FakePDClient pd = newPDClient();
+    RegionManager manager = new RegionManager(pd);
+    // regions of keys 5 and 25 are led by store 10, the others by store 20
+    for (int i : new int[] {5, 15, 25, 35}) {
+      manager.getRegionByKey(key(i));
+    }
+    assertEquals(4, pd.getRegionLookups());
+
+    manager.onRequestFail(manager.getRegionByKey(key(5)));
+    // regions led by the other store are still cached
+    manager.getRegionByKey(key(15));
+    manager.getRegionByKey(key(35));
+    assertEquals(4, pd.getRegionLookups());
+    // the region of the failed request is not the only one dropped
+    assertEquals(3, manager.getRegionByKey(key(25)).getId());
+    assertEquals(5, pd.getRegionLookups());
+    manager.getRegionByKey(key(5));
+    assertEquals(6, pd.getRegionLookups());
+
+    // regions cached again are indexed again
+    manager.onRequestFail(manager.getRegionByKey(key(25)));
+    manager.getRegionByKey(key(5));
+    manager.getRegionByKey(key(15));
+    assertEquals(7, pd.getRegionLookups());
+  }
+
   @Test
   public void getStoreByKey() throws Exception {
     ByteString startKey = ByteString.copyFrom(new byte[] {1});
@@ -195,4 +393,98 @@ public class RegionManagerTest {
     } catch (Exception ignored) {
     }
   }
+
+  @Test
+  public void coalesceMissesInInvalidatedRegion() throws Exception {
+    FakePDClient pd = newPDClient();
+    RegionManager manager = new RegionManager(pd);
+    TiRegion region = manager.getRegionByKey(key(5));
+    manager.invalidateRegion(region.getId());
+
+    pd.block(region.getId());
+    ExecutorService executor = Executors.newCachedThreadPool();
+    try {
+      Future<TiRegion> first = executor.submit(() -> manager.getRegionByKey(key(2)));
+      pd.awaitLookups(2);
+      List<Future<TiRegion>> others = new ArrayList<>();
+      for (int i : new int[] {3, 5, 9}) {
+        others.add(executor.submit(() -> manager.getRegionByKey(key(i))));
+      }
+      // the other misses in the region wait for the lookup in flight
+      Thread.sleep(200);
+      assertEquals(2, pd.getRegionLookups());
+      pd.release();
+      assertEquals(region.getId(), first.get(10, TimeUnit.SECONDS).getId());
+      for (Future<TiRegion> other : others) {
+        assertEquals(region.getId(), other.get(10, TimeUnit.SECONDS).getId());
+      }
+      assertEquals(2, pd.getRegionLookups());
+    } finally {
+      pd.release();
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void missesInOtherRegionsDoNotWait() throws Exception {
+    FakePDClient pd = newPDClient();
+    RegionManager manager = new RegionManager(pd);
+    TiRegion region = manager.getRegionByKey(key(5));
+    manager.invalidateRegion(region.getId());
+
+    pd.block(region.getId());
+    ExecutorService executor = Executors.newCachedThreadPool();
+    try {
+      Future<TiRegion> first = executor.submit(() -> manager.getRegionByKey(key(2)));
+      pd.awaitLookups(2);
+      // nothing is cached between both keys, yet the key is not in the invalidated region
+      Future<TiRegion> other = executor.submit(() -> manager.getRegionByKey(key(15)));
+      assertEquals(2, other.get(5, TimeUnit.SECONDS).getId());
+      assertFalse(first.isDone());
+      pd.release();
+      assertEquals(region.getId(), first.get(10, TimeUnit.SECONDS).getId());
+    } finally {
+      pd.release();
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void keepNewerRegionOnLateEpochNotMatch() throws Exception {
+    FakePDClient pd = newPDClient();
+    RegionManager manager = new RegionManager(pd);
+    TiRegion stale = manager.getRegionByKey(key(5));
+
+    manager.onRegionEpochNotMatch(stale, ImmutableList.of(regionMeta(stale, 1029)));
+    assertEquals(1029, manager.getRegionByKey(key(5)).getRegionEpoch().getVersion());
+    // another request to the stale region reports a version older than the cached one
+    manager.onRegionEpochNotMatch(stale, ImmutableList.of(regionMeta(stale, 1028)));
+    assertEquals(1029, manager.getRegionByKey(key(5)).getRegionEpoch().getVersion());
+    assertEquals(1, pd.getRegionLookups());
+  }
+
+  private static Metapb.Region regionMeta(TiRegion region, long version) {
+    return region
+        .getMeta()
+        .toBuilder()
+        .setRegionEpoch(GrpcUtils.makeRegionEpoch(1026, version))
+        .build();
+  }
+
+  private static ByteString key(int i) {
+    return ByteString.copyFrom(new byte[] {(byte) i});
+  }
+
+  /**
+   * A PD client serving regions [1, 10), [10, 20), [20, 30) and [30, 40), led by stores 10 and 20
+   * in turn
+   */
+  private static FakePDClient newPDClient() {
+    return new FakePDClient(
+        ImmutableList.of(
+            FakePDClient.makeRegion(1, key(1), key(10), 10),
+            FakePDClient.makeRegion(2, key(10), key(20), 20),
+            FakePDClient.makeRegion(3, key(20), key(30), 10),
+            FakePDClient.makeRegion(4, key(30), key(40), 20)));
+  }
 }
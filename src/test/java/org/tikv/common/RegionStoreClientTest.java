@@ -48,6 +48,16 @@ public class RegionStoreClientTest extends MockServerTest {
     return builder.build(region, store);
   }
 
+  @Test
+  public void shareStubsAcrossBuilders() throws Exception {
+    // each client comes from a builder of its own, as with the raw clients of a session
+    RegionStoreClient client = createClient();
+    RegionStoreClient other = createClient();
+    assertSame(client.getStoreBlockingStub(), other.getStoreBlockingStub());
+    client.close();
+    other.close();
+  }
+
   @Test
   public void rawGetTest() throws Exception {
     RegionStoreClient client = createClient();
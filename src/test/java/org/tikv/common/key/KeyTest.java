@@ -16,10 +16,13 @@
 package org.tikv.common.key;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.tikv.common.key.Key.toRawKey;
 
 import com.google.common.primitives.UnsignedBytes;
+import com.google.protobuf.ByteString;
 import org.junit.Test;
+import org.tikv.common.util.FastByteComparisons;
 
 public class KeyTest {
 
@@ -32,4 +35,36 @@ public class KeyTest {
     assertEquals(
         toRawKey(new byte[] {UnsignedBytes.MAX_VALUE, UnsignedBytes.MAX_VALUE, 0}), k1.next());
   }
+
+  @Test
+  public void compareToByteStringTest() throws Exception {
+    byte[][] keys =
+        new byte[][] {
+          {},
+          {0},
+          {1, 2, 3},
+          {1, 2, 3, 4, 5, 6, 7, 8},
+          {1, 2, 3, 4, 5, 6, 7, 8, 0},
+          {1, 2, 3, 4, 5, 6, 7, 9},
+          {1, 2, 3, 4, 5, 6, 7, UnsignedBytes.MAX_VALUE},
+          {UnsignedBytes.MAX_VALUE}
+        };
+    for (byte[] k1 : keys) {
+      for (byte[] k2 : keys) {
+        int expected = Integer.signum(FastByteComparisons.compareTo(k1, k2));
+        // a substring is backed by the array of the whole string at an offset
+        ByteString b2 = ByteString.copyFrom(new byte[] {9}).concat(ByteString.copyFrom(k2));
+        b2 = b2.substring(1);
+        assertEquals(
+            expected,
+            Integer.signum(FastByteComparisons.compareTo(ByteString.copyFrom(k1), b2)));
+        assertEquals(expected, Integer.signum(FastByteComparisons.compareTo(k1, b2)));
+        if (k1.length > 0) {
+          assertEquals(expected, Integer.signum(toRawKey(k1).compareTo(b2)));
+        }
+      }
+    }
+    assertTrue(toRawKey(new byte[0]).compareTo(ByteString.copyFrom(new byte[] {1})) > 0);
+    assertTrue(toRawKey(new byte[0], true).compareTo(ByteString.EMPTY) < 0);
+  }
 }
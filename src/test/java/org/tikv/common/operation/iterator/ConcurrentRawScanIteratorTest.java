@@ -0,0 +1,90 @@
+/*
+ * Copyright 2018 PingCAP, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tikv.common.operation.iterator;
+
+import static org.junit.Assert.*;
+
+import com.google.protobuf.ByteString;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.tikv.common.GrpcUtils;
+import org.tikv.common.MockServerTest;
+import org.tikv.common.TiConfiguration;
+import org.tikv.common.region.RegionStoreClient.RegionStoreClientBuilder;
+import org.tikv.kvproto.Kvrpcpb;
+import org.tikv.kvproto.Metapb;
+
+public class ConcurrentRawScanIteratorTest extends MockServerTest {
+  // more than the scan buffer of a region holds
+  private static final int KEY_COUNT = 500;
+  private RegionStoreClientBuilder builder;
+  private ExecutorService executor;
+
+  @Before
+  public void setUpBuilder() {
+    pdServer.addGetStoreResp(
+        GrpcUtils.makeGetStoreResponse(
+            pdServer.getClusterId(),
+            GrpcUtils.makeStore(13, LOCAL_ADDR + ":" + port, Metapb.StoreState.Up)));
+    builder =
+        new RegionStoreClientBuilder(
+            session.getConf(), session.getChannelFactory(), session.getRegionManager());
+    executor = Executors.newCachedThreadPool();
+    for (int i = 0; i < KEY_COUNT; i++) {
+      server.put(String.format("k%04d", i), String.format("v%04d", i));
+    }
+  }
+
+  @After
+  public void shutDownExecutor() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void slowConsumer() throws Exception {
+    TiConfiguration conf = session.getConf();
+    conf.setTimeout(500).setTimeoutUnit(TimeUnit.MILLISECONDS);
+    ConcurrentRawScanIterator iterator =
+        new ConcurrentRawScanIterator(
+            conf,
+            builder,
+            executor,
+            ByteString.EMPTY,
+            ByteString.copyFromUtf8("k"),
+            ByteString.EMPTY,
+            Integer.MAX_VALUE,
+            false);
+    List<ByteString> keys = new ArrayList<>();
+    while (iterator.hasNext()) {
+      Kvrpcpb.KvPair kvPair = iterator.next();
+      if (keys.isEmpty()) {
+        // the region scan fills its buffer and waits longer than the request timeout
+        Thread.sleep(3 * conf.getTimeoutUnit().toMillis(conf.getTimeout()));
+      }
+      keys.add(kvPair.getKey());
+    }
+    assertEquals(KEY_COUNT, keys.size());
+    for (int i = 0; i < KEY_COUNT; i++) {
+      assertEquals(ByteString.copyFromUtf8(String.format("k%04d", i)), keys.get(i));
+    }
+  }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2018 PingCAP, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tikv.common.operation.iterator;
+
+import static org.junit.Assert.assertEquals;
+
+import com.google.protobuf.ByteString;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+import org.tikv.common.TiConfiguration;
+import org.tikv.kvproto.Kvrpcpb;
+
+public class ScanBatchSizerTest {
+  private TiConfiguration conf;
+
+  @Before
+  public void setUp() {
+    // starts from scan batch size, which is 100
+    conf = TiConfiguration.createRawDefault("127.0.0.1:2379");
+    conf.setMinScanBatchSize(16);
+    conf.setMaxScanBatchSize(1000);
+    conf.setScanBatchTargetLatencyMs(100);
+  }
+
+  @Test
+  public void growTest() {
+    ScanBatchSizer sizer = new ScanBatchSizer(conf);
+    assertEquals(100, sizer.nextBatchSize());
+    sizer.onBatchLoaded(100, rows(100, 10), millis(10));
+    assertEquals(200, sizer.nextBatchSize());
+    sizer.onBatchLoaded(200, rows(200, 10), millis(10));
+    assertEquals(400, sizer.nextBatchSize());
+    // within the target latency but not well within it
+    sizer.onBatchLoaded(400, rows(400, 10), millis(80));
+    assertEquals(400, sizer.nextBatchSize());
+  }
+
+  @Test
+  public void shrinkTest() {
+    ScanBatchSizer sizer = new ScanBatchSizer(conf);
+    sizer.onBatchLoaded(100, rows(100, 10), millis(200));
+    assertEquals(50, sizer.nextBatchSize());
+    sizer.onBatchLoaded(50, rows(50, 10), millis(200));
+    assertEquals(25, sizer.nextBatchSize());
+  }
+
+  @Test
+  public void shortBatchTest() {
+    ScanBatchSizer sizer = new ScanBatchSizer(conf);
+    // a drained region says nothing about the latency of a full batch
+    sizer.onBatchLoaded(100, rows(10, 10), millis(1));
+    assertEquals(100, sizer.nextBatchSize());
+    sizer.onBatchLoaded(100, rows(0, 10), millis(1000));
+    assertEquals(100, sizer.nextBatchSize());
+  }
+
+  @Test
+  public void clampRowsTest() {
+    ScanBatchSizer sizer = new ScanBatchSizer(conf);
+    for (int i = 0; i < 10; i++) {
+      int batchSize = sizer.nextBatchSize();
+      sizer.onBatchLoaded(batchSize, rows(batchSize, 10), millis(1000));
+    }
+    assertEquals(16, sizer.nextBatchSize());
+    for (int i = 0; i < 10; i++) {
+      int batchSize = sizer.nextBatchSize();
+      sizer.onBatchLoaded(batchSize, rows(batchSize, 10), millis(1));
+    }
+    assertEquals(1000, sizer.nextBatchSize());
+
+    conf.setMaxScanBatchSize(50);
+    assertEquals(50, new ScanBatchSizer(conf).nextBatchSize());
+    conf.setMinScanBatchSize(200);
+    assertEquals(200, new ScanBatchSizer(conf).nextBatchSize());
+  }
+
+  @Test
+  public void clampBytesTest() {
+    conf.setMaxScanBatchBytes(10 * 1024);
+    ScanBatchSizer sizer = new ScanBatchSizer(conf);
+    // rows of 256 bytes, at most 40 of them fit in the byte limit
+    sizer.onBatchLoaded(100, rows(100, 256), millis(1));
+    assertEquals(40, sizer.nextBatchSize());
+    // rows so large that not even the min row count fits
+    sizer.onBatchLoaded(40, rows(40, 1024 * 1024), millis(1));
+    assertEquals(16, sizer.nextBatchSize());
+  }
+
+  private static List<Kvrpcpb.KvPair> rows(int count, int rowBytes) {
+    List<Kvrpcpb.KvPair> rows = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      ByteString key = ByteString.copyFromUtf8(String.format("%08d", i));
+      rows.add(
+          Kvrpcpb.KvPair.newBuilder()
+              .setKey(key)
+              .setValue(ByteString.copyFrom(new byte[rowBytes - key.size()]))
+              .build());
+    }
+    return rows;
+  }
+
+  private static long millis(long ms) {
+    return TimeUnit.MILLISECONDS.toNanos(ms);
+  }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2018 PingCAP, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tikv.common.operation.iterator;
+
+import static org.junit.Assert.*;
+
+import com.google.protobuf.ByteString;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.tikv.common.TiConfiguration;
+import org.tikv.common.region.TiRegion;
+import org.tikv.common.util.ConcurrencyLimitedExecutor;
+import org.tikv.common.util.Pair;
+import org.tikv.kvproto.Kvrpcpb;
+import org.tikv.kvproto.Metapb;
+
+public class ScanIteratorTest {
+  // three batches of the default scan batch size
+  private static final int KEY_COUNT = 250;
+  private TiConfiguration conf;
+  private TiRegion region;
+  private ExecutorService pool;
+
+  @Before
+  public void setUp() {
+    conf = TiConfiguration.createRawDefault("127.0.0.1:2379");
+    conf.setScanPrefetchDepth(2);
+    Metapb.Region r =
+        Metapb.Region.newBuilder()
+            .setRegionEpoch(Metapb.RegionEpoch.newBuilder().setConfVer(1).setVersion(2))
+            .setId(233)
+            .setStartKey(ByteString.EMPTY)
+            .setEndKey(ByteString.EMPTY)
+            .addPeers(Metapb.Peer.newBuilder().setId(11).setStoreId(13))
+            .build();
+    region =
+        new TiRegion(
+            r,
+            r.getPeers(0),
+            Kvrpcpb.IsolationLevel.RC,
+            Kvrpcpb.CommandPri.Low,
+            TiConfiguration.KVMode.RAW);
+    pool = Executors.newCachedThreadPool();
+  }
+
+  @After
+  public void tearDown() {
+    pool.shutdownNow();
+  }
+
+  /** Scans KEY_COUNT keys of a single region from memory */
+  private class ListScanIterator extends ScanIterator {
+    ListScanIterator(TiConfiguration conf, Executor prefetchExecutor) {
+      super(conf, null, key(0), ByteString.EMPTY, Integer.MAX_VALUE, prefetchExecutor);
+    }
+
+    @Override
+    Pair<TiRegion, List<Kvrpcpb.KvPair>> loadRegionBatch(ByteString startKey, int batchSize) {
+      List<Kvrpcpb.KvPair> batch = new ArrayList<>();
+      for (int i = 0; i < KEY_COUNT && batch.size() < batchSize; i++) {
+        if (key(i).toStringUtf8().compareTo(startKey.toStringUtf8()) >= 0) {
+          batch.add(Kvrpcpb.KvPair.newBuilder().setKey(key(i)).build());
+        }
+      }
+      return Pair.create(region, batch);
+    }
+  }
+
+  private TiRegion region(long id, ByteString startKey, ByteString endKey) {
+    Metapb.Region r =
+        region.getMeta().toBuilder().setId(id).setStartKey(startKey).setEndKey(endKey).build();
+    return new TiRegion(
+        r, r.getPeers(0), Kvrpcpb.IsolationLevel.RC, Kvrpcpb.CommandPri.Low, conf.getKvMode());
+  }
+
+  /**
+   * Raw scan of keys [0000, 0100) in region [, 0100) and [0200, 0300) in region [0200, 0300), with
+   * region [0100, 0200) empty in between
+   */
+  private class EmptyRegionScanIterator extends RawScanIterator {
+    private final List<TiRegion> regions =
+        Arrays.asList(
+            region(1, ByteString.EMPTY, key(100)),
+            region(2, key(100), key(200)),
+            region(3, key(200), key(300)));
+
+    EmptyRegionScanIterator(TiConfiguration conf, ByteString endKey, Executor prefetchExecutor) {
+      super(conf, null, ByteString.EMPTY, key(0), endKey, Integer.MAX_VALUE, prefetchExecutor);
+    }
+
+    @Override
+    Pair<TiRegion, List<Kvrpcpb.KvPair>> loadRegionBatch(ByteString startKey, int batchSize) {
+      TiRegion scanned = null;
+      for (TiRegion r : regions) {
+        if (r.contains(startKey)) {
+          scanned = r;
+        }
+      }
+      List<Kvrpcpb.KvPair> batch = new ArrayList<>();
+      for (int i = 0; i < 300 && batch.size() < batchSize; i++) {
+        if ((i < 100 || i >= 200)
+            && scanned.contains(key(i))
+            && key(i).toStringUtf8().compareTo(startKey.toStringUtf8()) >= 0) {
+          batch.add(Kvrpcpb.KvPair.newBuilder().setKey(key(i)).build());
+        }
+      }
+      return Pair.create(scanned, batch);
+    }
+  }
+
+  private static List<ByteString> drain(ScanIterator iterator) {
+    List<ByteString> keys = new ArrayList<>();
+    while (iterator.hasNext()) {
+      keys.add(iterator.next().getKey());
+    }
+    iterator.close();
+    return keys;
+  }
+
+  @Test
+  public void prefetch() {
+    List<ByteString> expected = new ArrayList<>();
+    for (int i = 0; i < KEY_COUNT; i++) {
+      expected.add(key(i));
+    }
+    assertEquals(expected, drain(new ListScanIterator(conf, pool)));
+  }
+
+  @Test
+  public void prefetchWithinTasks() throws Exception {
+    // like counting a range of more regions than the concurrency limit, every slot is taken by a
+    // task scanning a region, prefetches of its executor would be queued behind them
+    ConcurrencyLimitedExecutor executor = new ConcurrencyLimitedExecutor(pool, 2);
+    List<Callable<Integer>> tasks = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      tasks.add(() -> drain(new ListScanIterator(conf, executor)).size());
+    }
+    assertEquals(
+        Collections.nCopies(4, KEY_COUNT), executor.invokeAll(tasks, 10, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void emptyRegionInPrefetchedRange() {
+    List<ByteString> expected = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      expected.add(key(i));
+    }
+    for (int i = 200; i < 250; i++) {
+      expected.add(key(i));
+    }
+    // loading in the caller fetches the last batch while the batch of the empty region is taken
+    Executor direct = Runnable::run;
+    assertEquals(expected, drain(new EmptyRegionScanIterator(conf, key(250), direct)));
+    assertEquals(expected, drain(new EmptyRegionScanIterator(conf, key(250), pool)));
+  }
+
+  private static ByteString key(int i) {
+    return ByteString.copyFromUtf8(String.format("%04d", i));
+  }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2018 PingCAP, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tikv.common.util;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ConcurrencyLimitedExecutorTest {
+  private ExecutorService pool;
+
+  @Before
+  public void setUp() {
+    pool = Executors.newCachedThreadPool();
+  }
+
+  @After
+  public void tearDown() {
+    pool.shutdownNow();
+  }
+
+  @Test
+  public void limitConcurrency() throws Exception {
+    ConcurrencyLimitedExecutor executor = new ConcurrencyLimitedExecutor(pool, 2);
+    AtomicInteger running = new AtomicInteger();
+    AtomicInteger maxRunning = new AtomicInteger();
+    CountDownLatch done = new CountDownLatch(10);
+    for (int i = 0; i < 10; i++) {
+      executor.execute(
+          () -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+              Thread.sleep(10);
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+            }
+            running.decrementAndGet();
+            done.countDown();
+          });
+    }
+    assertTrue(done.await(10, TimeUnit.SECONDS));
+    assertEquals(2, maxRunning.get());
+  }
+
+  @Test
+  public void runQueuedTasksInOrder() throws Exception {
+    ConcurrencyLimitedExecutor executor = new ConcurrencyLimitedExecutor(pool, 1);
+    List<Integer> order = new ArrayList<>();
+    CountDownLatch done = new CountDownLatch(5);
+    for (int i = 0; i < 5; i++) {
+      int task = i;
+      executor.execute(
+          () -> {
+            synchronized (order) {
+              order.add(task);
+            }
+            done.countDown();
+          });
+    }
+    assertTrue(done.await(10, TimeUnit.SECONDS));
+    assertEquals(Arrays.asList(0, 1, 2, 3, 4), order);
+  }
+
+  @Test
+  public void isRunningTask() throws Exception {
+    ConcurrencyLimitedExecutor executor = new ConcurrencyLimitedExecutor(pool, 1);
+    assertFalse(ConcurrencyLimitedExecutor.isRunningTask());
+    List<Callable<Boolean>> tasks = new ArrayList<>();
+    tasks.add(ConcurrencyLimitedExecutor::isRunningTask);
+    assertEquals(Arrays.asList(true), executor.invokeAll(tasks, 10, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void invokeAllInOrder() throws Exception {
+    ConcurrencyLimitedExecutor executor = new ConcurrencyLimitedExecutor(pool, 2);
+    List<Callable<Integer>> tasks = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      int task = i;
+      tasks.add(
+          () -> {
+            Thread.sleep(10 - task);
+            return task;
+          });
+    }
+    assertEquals(
+        Arrays.asList(0, 1, 2, 3, 4, 5, 6, 7, 8, 9),
+        executor.invokeAll(tasks, 10, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void invokeAllFailure() throws Exception {
+    ConcurrencyLimitedExecutor executor = new ConcurrencyLimitedExecutor(pool, 2);
+    IllegalStateException error = new IllegalStateException("task failed");
+    List<Callable<Integer>> tasks = new ArrayList<>();
+    tasks.add(() -> 1);
+    tasks.add(
+        () -> {
+          throw error;
+        });
+    try {
+      executor.invokeAll(tasks, 10, TimeUnit.SECONDS);
+      fail();
+    } catch (ExecutionException e) {
+      assertSame(error, e.getCause());
+    }
+  }
+
+  @Test
+  public void nestedInvokeAll() throws Exception {
+    // every slot is taken by a task waiting for tasks queued behind it
+    ConcurrencyLimitedExecutor executor = new ConcurrencyLimitedExecutor(pool, 2);
+    List<Callable<Integer>> tasks = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      tasks.add(
+          () -> {
+            List<Callable<Integer>> nested = new ArrayList<>();
+            for (int j = 0; j < 4; j++) {
+              nested.add(() -> 1);
+            }
+            int sum = 0;
+            for (int result : executor.invokeAll(nested, 10, TimeUnit.SECONDS)) {
+              sum += result;
+            }
+            return sum;
+          });
+    }
+    assertEquals(Arrays.asList(4, 4, 4, 4), executor.invokeAll(tasks, 10, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void nestedInvokeAllRunsConcurrently() throws Exception {
+    ConcurrencyLimitedExecutor executor = new ConcurrencyLimitedExecutor(pool, 2);
+    // both nested tasks have to run at once to pass the barrier, one on the executor and the one
+    // queued behind it on the calling task
+    CyclicBarrier barrier = new CyclicBarrier(2);
+    List<Callable<Integer>> nested = new ArrayList<>();
+    for (int i = 0; i < 2; i++) {
+      nested.add(() -> barrier.await(10, TimeUnit.SECONDS));
+    }
+    List<Callable<List<Integer>>> tasks = new ArrayList<>();
+    tasks.add(() -> executor.invokeAll(nested, 10, TimeUnit.SECONDS));
+    List<Integer> arrivals = executor.invokeAll(tasks, 10, TimeUnit.SECONDS).get(0);
+    assertEquals(2, arrivals.size());
+    assertTrue(arrivals.contains(0));
+    assertTrue(arrivals.contains(1));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void invalidMaxConcurrency() {
+    new ConcurrencyLimitedExecutor(pool, 0);
+  }
+}
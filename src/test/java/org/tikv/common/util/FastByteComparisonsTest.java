@@ -0,0 +1,85 @@
+/*
+ * Copyright 2018 PingCAP, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tikv.common.util;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+import com.google.protobuf.ByteString;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import org.junit.Test;
+
+public class FastByteComparisonsTest {
+  private static ByteString bytes(int... bytes) {
+    byte[] array = new byte[bytes.length];
+    for (int i = 0; i < bytes.length; i++) {
+      array[i] = (byte) bytes[i];
+    }
+    return ByteString.copyFrom(array);
+  }
+
+  private static void assertOrdered(ByteString smaller, ByteString greater) {
+    assertTrue(FastByteComparisons.compareTo(smaller, greater) < 0);
+    assertTrue(FastByteComparisons.compareTo(greater, smaller) > 0);
+    assertTrue(FastByteComparisons.compareTo(smaller.toByteArray(), greater) < 0);
+    assertTrue(FastByteComparisons.compareTo(greater.toByteArray(), smaller) > 0);
+  }
+
+  @Test
+  public void compareUnsigned() {
+    assertOrdered(ByteString.EMPTY, bytes(0));
+    assertOrdered(bytes(1, 2), bytes(1, 2, 0));
+    // 0x80 and above are greater than 0x7f although negative as bytes
+    assertOrdered(bytes(0x7f), bytes(0x80));
+    assertOrdered(bytes(1, 0x7f, 0xff), bytes(1, 0xff));
+    assertOrdered(bytes(1, 2, 3, 4, 5, 6, 7, 8, 9), bytes(1, 2, 3, 4, 5, 6, 7, 8, 0xa));
+
+    ByteString key = bytes(1, 0xff, 3);
+    assertEquals(0, FastByteComparisons.compareTo(key, bytes(1, 0xff, 3)));
+    assertEquals(0, FastByteComparisons.compareTo(key.toByteArray(), key));
+  }
+
+  @Test
+  public void compareRopesAndSubstrings() {
+    ByteString rope = bytes(1, 2).concat(bytes(3)).concat(bytes(0x90, 5));
+    assertEquals(0, FastByteComparisons.compareTo(rope, bytes(1, 2, 3, 0x90, 5)));
+    assertOrdered(rope.substring(1, 3), rope.substring(2));
+    assertOrdered(bytes(1, 2, 3, 0x90), rope);
+  }
+
+  @Test
+  public void compareWithoutAllocating() {
+    ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    assumeTrue(threads instanceof com.sun.management.ThreadMXBean);
+    com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+    assumeTrue(allocations.isThreadAllocatedMemorySupported());
+    allocations.setThreadAllocatedMemoryEnabled(true);
+
+    ByteString key1 = ByteString.copyFromUtf8("t_r_00000000000000000001_index_key_1");
+    ByteString key2 = ByteString.copyFromUtf8("t_r_00000000000000000001_index_key_2");
+    long threadId = Thread.currentThread().getId();
+    int result = 0;
+    long before = allocations.getThreadAllocatedBytes(threadId);
+    for (int i = 0; i < 100_000; i++) {
+      result += FastByteComparisons.compareTo(key1, key2);
+    }
+    long allocated = allocations.getThreadAllocatedBytes(threadId) - before;
+    assertEquals(-100_000, result);
+    // buffer views took about 100 bytes per comparison, a few stray allocations are allowed
+    assertTrue("allocated " + allocated + " bytes", allocated < 64 * 1024);
+  }
+}
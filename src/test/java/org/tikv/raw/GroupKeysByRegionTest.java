@@ -0,0 +1,127 @@
+/*
+ * Copyright 2018 PingCAP, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tikv.raw;
+
+import static org.junit.Assert.*;
+
+import com.google.common.collect.ImmutableList;
+import com.google.protobuf.ByteString;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.tikv.common.FakePDClient;
+import org.tikv.common.TiConfiguration;
+import org.tikv.common.region.RegionManager;
+import org.tikv.common.region.RegionStoreClient.RegionStoreClientBuilder;
+import org.tikv.common.region.TiRegion;
+import org.tikv.common.util.ChannelFactory;
+
+public class GroupKeysByRegionTest {
+  // regions [, b), [b, d), [d, f) and [f, )
+  private final List<TiRegion> regions =
+      ImmutableList.of(
+          FakePDClient.makeRegion(1, ByteString.EMPTY, key("b"), 10),
+          FakePDClient.makeRegion(2, key("b"), key("d"), 10),
+          FakePDClient.makeRegion(3, key("d"), key("f"), 10),
+          FakePDClient.makeRegion(4, key("f"), ByteString.EMPTY, 10));
+  // lookups of the region manager, whether or not they hit its cache
+  private final AtomicInteger regionLookups = new AtomicInteger();
+  private ChannelFactory channelFactory;
+  private RawKVClient client;
+
+  @Before
+  public void setUp() {
+    TiConfiguration conf = TiConfiguration.createRawDefault("127.0.0.1:2379");
+    RegionManager regionManager =
+        new RegionManager(new FakePDClient(regions)) {
+          @Override
+          public TiRegion getRegionByKey(ByteString key) {
+            regionLookups.incrementAndGet();
+            return super.getRegionByKey(key);
+          }
+        };
+    channelFactory = new ChannelFactory(conf.getMaxFrameSize());
+    client =
+        new RawKVClient(conf, new RegionStoreClientBuilder(conf, channelFactory, regionManager));
+  }
+
+  @After
+  public void tearDown() {
+    client.close();
+    channelFactory.close();
+  }
+
+  private static ByteString key(String key) {
+    return ByteString.copyFromUtf8(key);
+  }
+
+  private static List<ByteString> keys(String... keys) {
+    List<ByteString> result = new ArrayList<>();
+    for (String key : keys) {
+      result.add(key(key));
+    }
+    return result;
+  }
+
+  @Test
+  public void groupUnsortedKeys() {
+    Map<TiRegion, List<ByteString>> groups =
+        client.groupKeysByRegion(
+            new LinkedHashSet<>(keys("e2", "a1", "c1", "g", "e1", "a0", "c0", "b")));
+
+    assertEquals(regions, new ArrayList<>(groups.keySet()));
+    assertEquals(keys("a1", "a0"), groups.get(regions.get(0)));
+    assertEquals(keys("c1", "c0", "b"), groups.get(regions.get(1)));
+    assertEquals(keys("e2", "e1"), groups.get(regions.get(2)));
+    assertEquals(keys("g"), groups.get(regions.get(3)));
+    assertEquals(4, regionLookups.get());
+  }
+
+  @Test
+  public void groupManyKeys() {
+    // enough keys to be sorted in parallel, none in region [d, f)
+    List<ByteString> keys = new ArrayList<>();
+    for (String prefix : Arrays.asList("a", "c", "g")) {
+      for (int i = 0; i < 5000; i++) {
+        keys.add(key(prefix + i));
+      }
+    }
+    Collections.shuffle(keys, new Random(42));
+    Map<TiRegion, List<ByteString>> groups = client.groupKeysByRegion(keys);
+
+    assertEquals(
+        Arrays.asList(regions.get(0), regions.get(1), regions.get(3)),
+        new ArrayList<>(groups.keySet()));
+    for (Map.Entry<TiRegion, List<ByteString>> group : groups.entrySet()) {
+      List<ByteString> expected = new ArrayList<>();
+      for (ByteString key : keys) {
+        if (group.getKey().contains(key)) {
+          expected.add(key);
+        }
+      }
+      assertEquals(expected, group.getValue());
+    }
+    assertEquals(3, regionLookups.get());
+  }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2018 PingCAP, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tikv.raw;
+
+import static org.junit.Assert.*;
+
+import com.google.common.collect.ImmutableList;
+import com.google.protobuf.ByteString;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import org.junit.Before;
+import org.junit.Test;
+import org.tikv.common.FakePDClient;
+import org.tikv.common.GrpcUtils;
+import org.tikv.common.KVMockServer;
+import org.tikv.common.MockServerTest;
+import org.tikv.common.region.RegionManager;
+import org.tikv.common.region.RegionStoreClient.RegionStoreClientBuilder;
+import org.tikv.common.region.TiRegion;
+import org.tikv.kvproto.Kvrpcpb;
+import org.tikv.kvproto.Metapb;
+
+public class RawAsyncTest extends MockServerTest {
+  // more keys per region than a scan batch, so that scans page within regions
+  private static final int KEYS_PER_PREFIX = 150;
+
+  private Metapb.Store store;
+
+  @Before
+  public void setUpStore() {
+    store = GrpcUtils.makeStore(13, LOCAL_ADDR + ":" + port, Metapb.StoreState.Up);
+  }
+
+  /** A client of regions [, b), [b, d), [d, e) and [e, ) led by the mock TiKV */
+  private RawKVClient createClient() {
+    List<TiRegion> regions =
+        ImmutableList.of(
+            FakePDClient.makeRegion(1, ByteString.EMPTY, key("b"), 13),
+            FakePDClient.makeRegion(2, key("b"), key("d"), 13),
+            FakePDClient.makeRegion(3, key("d"), key("e"), 13),
+            FakePDClient.makeRegion(4, key("e"), ByteString.EMPTY, 13));
+    for (TiRegion region : regions) {
+      server.addRegion(region);
+    }
+    return createClient(new FakePDClient(regions, ImmutableList.of(store)));
+  }
+
+  private RawKVClient createClient(FakePDClient pd) {
+    return new RawKVClient(
+        session.getConf(),
+        new RegionStoreClientBuilder(
+            session.getConf(), session.getChannelFactory(), new RegionManager(pd)));
+  }
+
+  private static ByteString key(String key) {
+    return ByteString.copyFromUtf8(key);
+  }
+
+  /** Keys a000 to e149 of prefixes a, b, c and e, in order, none in region [d, e) */
+  private List<ByteString> putKeys() {
+    List<ByteString> keys = new ArrayList<>();
+    for (String prefix : new String[] {"a", "b", "c", "e"}) {
+      for (int i = 0; i < KEYS_PER_PREFIX; i++) {
+        String key = String.format("%s%03d", prefix, i);
+        server.put(key, "v" + key);
+        keys.add(key(key));
+      }
+    }
+    return keys;
+  }
+
+  private static List<ByteString> keysOf(List<Kvrpcpb.KvPair> kvPairs) {
+    List<ByteString> keys = new ArrayList<>();
+    for (Kvrpcpb.KvPair kvPair : kvPairs) {
+      assertEquals(key("v" + kvPair.getKey().toStringUtf8()), kvPair.getValue());
+      keys.add(kvPair.getKey());
+    }
+    return keys;
+  }
+
+  @Test
+  public void putGetDelete() {
+    RawKVClient client = createClient();
+    client.putAsync(key("b1"), key("v1")).join();
+    client.putAsync(key("e1"), key("v2")).join();
+    assertEquals(key("v1"), client.getAsync(key("b1")).join());
+    assertEquals(key("v2"), client.getAsync(key("e1")).join());
+
+    client.deleteAsync(key("b1")).join();
+    assertEquals(ByteString.EMPTY, client.getAsync(key("b1")).join());
+    client.close();
+  }
+
+  @Test
+  public void fallbackAfterRegionError() {
+    RawKVClient client = createClient();
+    server.put("c1", "v1");
+    // the asynchronous request gets the region error, the blocking retry gets the value
+    server.putError("c1", KVMockServer.SERVER_IS_BUSY);
+    assertEquals(key("v1"), client.getAsync(key("c1")).join());
+
+    server.putError("c2", KVMockServer.SERVER_IS_BUSY);
+    client.putAsync(key("c2"), key("v2")).join();
+    assertEquals(key("v2"), client.get(key("c2")));
+    client.close();
+
+    // failures issuing the request, like a key in no region, fail the future instead of throwing
+    RawKVClient noRegions = createClient(new FakePDClient(ImmutableList.of()));
+    CompletableFuture<ByteString> future = noRegions.getAsync(key("c1"));
+    try {
+      future.join();
+      fail();
+    } catch (CompletionException e) {
+      assertTrue(future.isCompletedExceptionally());
+    }
+    noRegions.close();
+  }
+
+  @Test
+  public void scanAcrossRegions() {
+    RawKVClient client = createClient();
+    List<ByteString> keys = putKeys();
+
+    assertEquals(keys, keysOf(client.scanAsync(key("a"), key("f")).join()));
+    // bounded by the end key inside a region and after an empty region
+    assertEquals(
+        keys.subList(100, 460), keysOf(client.scanAsync(key("a100"), key("e010")).join()));
+    // bounded by the limit, from a start key inside a region
+    assertEquals(keys.subList(120, 440), keysOf(client.scanAsync(key("a120"), 320).join()));
+    assertEquals(keys.subList(450, 600), keysOf(client.scanAsync(key("d"), 1000).join()));
+    assertTrue(client.scanAsync(key("f"), 10).join().isEmpty());
+    client.close();
+  }
+}
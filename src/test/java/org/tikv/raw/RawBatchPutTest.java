@@ -0,0 +1,100 @@
+/*
+ * Copyright 2018 PingCAP, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tikv.raw;
+
+import static org.junit.Assert.*;
+
+import com.google.protobuf.ByteString;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Before;
+import org.junit.Test;
+import org.tikv.common.GrpcUtils;
+import org.tikv.common.MockServerTest;
+import org.tikv.common.exception.TiKVException;
+import org.tikv.kvproto.Metapb;
+
+public class RawBatchPutTest extends MockServerTest {
+  private RawKVClient client;
+
+  @Before
+  public void setUpClient() {
+    // the leader store of the mock region is served by the mock TiKV
+    pdServer.addGetStoreResp(
+        GrpcUtils.makeGetStoreResponse(
+            pdServer.getClusterId(),
+            GrpcUtils.makeStore(13, LOCAL_ADDR + ":" + port, Metapb.StoreState.Up)));
+    client = session.createRawClient();
+  }
+
+  /** Pairs of 10 bytes each, a key of 2 bytes and a value of 8 bytes */
+  private static Map<ByteString, ByteString> pairs(int count) {
+    Map<ByteString, ByteString> kvPairs = new HashMap<>();
+    for (int i = 0; i < count; i++) {
+      kvPairs.put(
+          ByteString.copyFromUtf8(String.format("%02d", i)),
+          ByteString.copyFromUtf8(String.format("value-%02d", i)));
+    }
+    return kvPairs;
+  }
+
+  private void assertWritten(Map<ByteString, ByteString> kvPairs) {
+    for (Map.Entry<ByteString, ByteString> pair : kvPairs.entrySet()) {
+      assertEquals(pair.getValue(), client.get(pair.getKey()));
+    }
+  }
+
+  @Test
+  public void batchPutBoundedByBytes() {
+    session.getConf().setRawBatchPutRequestMaxBytes(20);
+    Map<ByteString, ByteString> kvPairs = pairs(10);
+    client.batchPut(kvPairs);
+
+    assertEquals(Collections.nCopies(5, 2), server.getRawBatchPutSizes());
+    assertWritten(kvPairs);
+    client.close();
+  }
+
+  @Test
+  public void halveTooLargeBatchPut() {
+    // requests of 10 and 5 pairs exceed the raft entry limit, halves of at most 2 pairs do not
+    server.setRaftEntryMaxBytes(25);
+    Map<ByteString, ByteString> kvPairs = pairs(10);
+    client.batchPut(kvPairs);
+
+    List<Integer> sizes = new ArrayList<>(server.getRawBatchPutSizes());
+    Collections.sort(sizes);
+    assertEquals(Arrays.asList(1, 1, 2, 2, 2, 2), sizes);
+    assertWritten(kvPairs);
+    client.close();
+  }
+
+  @Test
+  public void singlePairTooLarge() {
+    server.setRaftEntryMaxBytes(5);
+    try {
+      client.batchPut(pairs(2));
+      fail();
+    } catch (TiKVException e) {
+      assertTrue(server.getRawBatchPutSizes().isEmpty());
+    }
+    client.close();
+  }
+}
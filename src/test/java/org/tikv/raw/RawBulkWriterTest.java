@@ -0,0 +1,159 @@
+/*
+ * Copyright 2018 PingCAP, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tikv.raw;
+
+import static org.junit.Assert.*;
+
+import com.google.protobuf.ByteString;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.tikv.common.GrpcUtils;
+import org.tikv.common.PDMockServer;
+import org.tikv.common.TiConfiguration;
+import org.tikv.common.TiSession;
+import org.tikv.common.region.RegionManager;
+import org.tikv.common.util.RawExecutors;
+
+public class RawBulkWriterTest {
+  private static final long CLUSTER_ID = 1024;
+  private static final String LOCAL_ADDR = "127.0.0.1";
+  private static final long REGION_ID = 233;
+  private PDMockServer server;
+  private TiSession session;
+  private TiConfiguration conf;
+  private RegionManager mgr;
+  private ExecutorService executor;
+  private ScheduledExecutorService scheduler;
+  // values of key(5) in the order they are written
+  private final List<ByteString> written = Collections.synchronizedList(new ArrayList<>());
+  // the first value of key(5) is only written once this is released
+  private final CountDownLatch release = new CountDownLatch(1);
+
+  @Before
+  public void setup() throws IOException {
+    server = new PDMockServer();
+    server.start(CLUSTER_ID);
+    server.addGetMemberResp(
+        GrpcUtils.makeGetMembersResponse(
+            server.getClusterId(),
+            GrpcUtils.makeMember(1, "http://" + LOCAL_ADDR + ":" + server.port)));
+
+    conf = TiConfiguration.createDefault("127.0.0.1:" + server.port);
+    // every mutation is flushed at once
+    conf.setRawBulkWriteFlushCount(1);
+    session = TiSession.create(conf);
+    mgr = new RegionManager(session.getPDClient());
+    executor = Executors.newCachedThreadPool();
+    scheduler = RawExecutors.createScheduler();
+  }
+
+  @After
+  public void tearDown() {
+    release.countDown();
+    executor.shutdownNow();
+    scheduler.shutdownNow();
+    server.stop();
+    session.close();
+  }
+
+  private void addRegion(long regionId, int startKey, int endKey, int version) {
+    server.addGetRegionResp(
+        GrpcUtils.makeGetRegionResponse(
+            server.getClusterId(),
+            GrpcUtils.makeRegion(
+                regionId,
+                GrpcUtils.encodeKey(new byte[] {(byte) startKey}),
+                GrpcUtils.encodeKey(new byte[] {(byte) endKey}),
+                GrpcUtils.makeRegionEpoch(1026, version),
+                GrpcUtils.makePeer(1, 10))));
+  }
+
+  private RawBulkWriter newBulkWriter() {
+    Consumer<Map<ByteString, ByteString>> writer =
+        mutations -> {
+          ByteString value = mutations.get(key(5));
+          if (value == null) {
+            return;
+          }
+          try {
+            if (value.equals(key(1))) {
+              release.await(10, TimeUnit.SECONDS);
+            }
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+          written.add(value);
+        };
+    return new RawBulkWriter(writer, mgr, executor, scheduler, conf);
+  }
+
+  @Test
+  public void keepOrderAcrossSplit() throws Exception {
+    addRegion(REGION_ID, 1, 100, 1027);
+    RawBulkWriter bulkWriter = newBulkWriter();
+    bulkWriter.put(key(5), key(1));
+
+    // the region splits while the first flush is being written, the key moves to a new region
+    mgr.invalidateRegion(REGION_ID);
+    addRegion(REGION_ID + 1, 5, 100, 1028);
+    bulkWriter.put(key(5), key(2));
+
+    // the flush of the new region waits for the one of the old region
+    Thread.sleep(200);
+    assertTrue(written.isEmpty());
+    release.countDown();
+    bulkWriter.close();
+    assertEquals(Arrays.asList(key(1), key(2)), written);
+  }
+
+  @Test
+  public void keepOrderAcrossMerge() throws Exception {
+    addRegion(REGION_ID, 1, 5, 1027);
+    addRegion(REGION_ID + 1, 5, 100, 1027);
+    RawBulkWriter bulkWriter = newBulkWriter();
+    bulkWriter.put(key(1), key(1));
+    bulkWriter.put(key(5), key(1));
+
+    // the first region absorbs the second one while the first flush of the key is being written,
+    // so the key moves to the buffer of the first region
+    mgr.invalidateRegion(REGION_ID + 1);
+    addRegion(REGION_ID, 1, 100, 1028);
+    bulkWriter.put(key(5), key(2));
+
+    Thread.sleep(200);
+    assertTrue(written.isEmpty());
+    release.countDown();
+    bulkWriter.close();
+    assertEquals(Arrays.asList(key(1), key(2)), written);
+  }
+
+  private static ByteString key(int i) {
+    return ByteString.copyFrom(new byte[] {(byte) i});
+  }
+}
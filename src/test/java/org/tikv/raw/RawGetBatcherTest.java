@@ -0,0 +1,182 @@
+/*
+ * Copyright 2018 PingCAP, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tikv.raw;
+
+import static org.junit.Assert.*;
+
+import com.google.protobuf.ByteString;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.tikv.common.GrpcUtils;
+import org.tikv.common.PDMockServer;
+import org.tikv.common.TiConfiguration;
+import org.tikv.common.TiSession;
+import org.tikv.common.exception.TiKVException;
+import org.tikv.common.region.RegionManager;
+import org.tikv.common.util.RawExecutors;
+import org.tikv.kvproto.Kvrpcpb;
+
+public class RawGetBatcherTest {
+  private static final long CLUSTER_ID = 1024;
+  private static final String LOCAL_ADDR = "127.0.0.1";
+  private PDMockServer server;
+  private TiSession session;
+  private RegionManager mgr;
+  private ExecutorService executor;
+  private ScheduledExecutorService scheduler;
+  // keys of each batch sent
+  private final List<List<ByteString>> sent = new ArrayList<>();
+
+  @Before
+  public void setup() throws IOException {
+    server = new PDMockServer();
+    server.start(CLUSTER_ID);
+    server.addGetMemberResp(
+        GrpcUtils.makeGetMembersResponse(
+            server.getClusterId(),
+            GrpcUtils.makeMember(1, "http://" + LOCAL_ADDR + ":" + server.port)));
+    // a single region holds every key of the tests
+    server.addGetRegionResp(
+        GrpcUtils.makeGetRegionResponse(
+            server.getClusterId(),
+            GrpcUtils.makeRegion(
+                233,
+                GrpcUtils.encodeKey(new byte[] {1}),
+                GrpcUtils.encodeKey(new byte[] {100}),
+                GrpcUtils.makeRegionEpoch(1026, 1027),
+                GrpcUtils.makePeer(1, 10))));
+
+    TiConfiguration conf = TiConfiguration.createDefault("127.0.0.1:" + server.port);
+    session = TiSession.create(conf);
+    mgr = new RegionManager(session.getPDClient());
+    executor = Executors.newCachedThreadPool();
+    scheduler = RawExecutors.createScheduler();
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+    scheduler.shutdownNow();
+    server.stop();
+    session.close();
+  }
+
+  /** A batcher reading the value of a key as the key itself, except for missing keys */
+  private RawGetBatcher newBatcher(long windowMs, int maxKeys, ByteString missingKey) {
+    return new RawGetBatcher(
+        mgr,
+        executor,
+        scheduler,
+        (region, keys) -> {
+          synchronized (sent) {
+            sent.add(new ArrayList<>(keys));
+          }
+          List<Kvrpcpb.KvPair> kvPairs = new ArrayList<>();
+          for (ByteString key : keys) {
+            if (!key.equals(missingKey)) {
+              kvPairs.add(Kvrpcpb.KvPair.newBuilder().setKey(key).setValue(key).build());
+            }
+          }
+          return kvPairs;
+        },
+        windowMs,
+        maxKeys);
+  }
+
+  @Test
+  public void flushOnWindow() throws Exception {
+    RawGetBatcher batcher = newBatcher(50, 1024, key(3));
+    CompletableFuture<ByteString> first = batcher.get(key(1));
+    CompletableFuture<ByteString> second = batcher.get(key(2));
+    CompletableFuture<ByteString> again = batcher.get(key(1));
+    CompletableFuture<ByteString> missing = batcher.get(key(3));
+
+    assertEquals(key(1), first.get(10, TimeUnit.SECONDS));
+    assertEquals(key(2), second.get(10, TimeUnit.SECONDS));
+    assertEquals(key(1), again.get(10, TimeUnit.SECONDS));
+    assertEquals(ByteString.EMPTY, missing.get(10, TimeUnit.SECONDS));
+    // a key requested twice is read once
+    assertEquals(Arrays.asList(Arrays.asList(key(1), key(2), key(3))), sent);
+    batcher.close();
+  }
+
+  @Test
+  public void flushOnSize() throws Exception {
+    // the window never ends within the test
+    RawGetBatcher batcher = newBatcher(TimeUnit.MINUTES.toMillis(10), 2, null);
+    CompletableFuture<ByteString> first = batcher.get(key(1));
+    CompletableFuture<ByteString> second = batcher.get(key(2));
+    assertEquals(key(2), second.get(10, TimeUnit.SECONDS));
+    assertEquals(key(1), first.get(10, TimeUnit.SECONDS));
+
+    // closing sends what is still gathering
+    CompletableFuture<ByteString> third = batcher.get(key(3));
+    assertFalse(third.isDone());
+    batcher.close();
+    assertEquals(key(3), third.get(10, TimeUnit.SECONDS));
+    assertEquals(Arrays.asList(key(3)), sent.get(1));
+  }
+
+  @Test
+  public void errorReachesEveryCaller() throws Exception {
+    TiKVException error = new TiKVException("send failed");
+    RawGetBatcher batcher =
+        new RawGetBatcher(
+            mgr,
+            executor,
+            scheduler,
+            (region, keys) -> {
+              throw error;
+            },
+            50,
+            1024);
+    List<CompletableFuture<ByteString>> futures = new ArrayList<>();
+    for (int i = 1; i <= 3; i++) {
+      futures.add(batcher.get(key(i)));
+    }
+    for (CompletableFuture<ByteString> future : futures) {
+      try {
+        future.get(10, TimeUnit.SECONDS);
+        fail();
+      } catch (ExecutionException e) {
+        assertSame(error, e.getCause());
+      }
+    }
+    batcher.close();
+  }
+
+  @Test(expected = TiKVException.class)
+  public void getAfterClose() {
+    RawGetBatcher batcher = newBatcher(50, 1024, null);
+    batcher.close();
+    batcher.get(key(1));
+  }
+
+  private static ByteString key(int i) {
+    return ByteString.copyFrom(new byte[] {(byte) i});
+  }
+}
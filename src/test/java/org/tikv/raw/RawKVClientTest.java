@@ -5,6 +5,7 @@ import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import org.apache.commons.lang3.RandomStringUtils;
 import org.apache.log4j.Logger;
 import org.junit.After;
@@ -110,8 +111,16 @@ public class RawKVClientTest {
       checkScan(key1, key3, result);
       result2.add(kv1);
       checkScan(key, key2, result2);
+      checkScanKeyOnly(key, key3, Arrays.asList(key1, key2));
       checkDelete(key1);
       checkDelete(key2);
+      checkPut(key1, value1);
+      checkPut(key2, value2);
+      checkBatchDelete(Arrays.asList(key1, key2, key3));
+      checkPut(key1, value1);
+      checkPut(key2, value2);
+      checkDeleteRange(key, key3);
+      checkBulkWrite(key1, value1, key2);
     } catch (final TiKVException e) {
       logger.warn("Test fails with Exception: " + e);
     }
@@ -329,6 +338,9 @@ public class RawKVClientTest {
           break;
         }
       }
+      List<ByteString> keys = new ArrayList<>(data.keySet());
+      keys.add(rawKey("non_existing_key"));
+      checkBatchGet(keys);
     }
   }
 
@@ -415,9 +427,22 @@ public class RawKVClientTest {
     }
   }
 
+  private void checkBatchGet(List<ByteString> keys) {
+    List<Kvrpcpb.KvPair> result = client.batchGet(keys);
+    assert result.size() == keys.size();
+    for (int i = 0; i < keys.size(); i++) {
+      assert result.get(i).getKey().equals(keys.get(i));
+      assert result.get(i).getValue().equals(data.getOrDefault(keys.get(i), ByteString.EMPTY));
+    }
+  }
+
   private void checkScan(ByteString startKey, ByteString endKey, List<Kvrpcpb.KvPair> ans) {
     List<Kvrpcpb.KvPair> result = client.scan(startKey, endKey);
     assert result.equals(ans);
+    try (Stream<Kvrpcpb.KvPair> stream = client.scanStream(startKey, endKey)) {
+      List<Kvrpcpb.KvPair> first = stream.limit(1).collect(Collectors.toList());
+      assert first.equals(ans.subList(0, Math.min(1, ans.size())));
+    }
   }
 
   private void checkScan(
@@ -437,11 +462,46 @@ public class RawKVClientTest {
             .collect(Collectors.toList()));
   }
 
+  private void checkScanKeyOnly(ByteString startKey, ByteString endKey, List<ByteString> keys) {
+    List<Kvrpcpb.KvPair> result = client.scan(startKey, endKey, true);
+    assert result.size() == keys.size();
+    for (int i = 0; i < keys.size(); i++) {
+      assert result.get(i).getKey().equals(keys.get(i));
+      assert result.get(i).getValue().isEmpty();
+    }
+    assert client.count(startKey, endKey) == keys.size();
+    // keys before startKey may exist
+    assert client.count(ByteString.EMPTY, endKey) >= keys.size();
+  }
+
   private void checkDelete(ByteString key) {
     client.delete(key);
     checkEmpty(key);
   }
 
+  private void checkBatchDelete(List<ByteString> keys) {
+    client.batchDelete(keys);
+    for (ByteString key : keys) {
+      checkEmpty(key);
+    }
+  }
+
+  private void checkDeleteRange(ByteString startKey, ByteString endKey) {
+    client.deleteRange(startKey, endKey);
+    assert client.scan(startKey, endKey).isEmpty();
+  }
+
+  private void checkBulkWrite(ByteString putKey, ByteString value, ByteString deleteKey) {
+    client.put(deleteKey, value);
+    try (RawBulkWriter writer = client.newBulkWriter()) {
+      writer.put(putKey, value);
+      writer.delete(deleteKey);
+    }
+    assert client.get(putKey).equals(value);
+    checkEmpty(deleteKey);
+    client.delete(putKey);
+  }
+
   private void checkEmpty(ByteString key) {
     assert client.get(key).isEmpty();
   }
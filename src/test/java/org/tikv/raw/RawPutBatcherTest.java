@@ -0,0 +1,171 @@
+/*
+ * Copyright 2018 PingCAP, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tikv.raw;
+
+import static org.junit.Assert.*;
+
+import com.google.protobuf.ByteString;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.tikv.common.GrpcUtils;
+import org.tikv.common.PDMockServer;
+import org.tikv.common.TiConfiguration;
+import org.tikv.common.TiSession;
+import org.tikv.common.exception.TiKVException;
+import org.tikv.common.region.RegionManager;
+import org.tikv.common.util.RawExecutors;
+
+public class RawPutBatcherTest {
+  private static final long CLUSTER_ID = 1024;
+  private static final String LOCAL_ADDR = "127.0.0.1";
+  private PDMockServer server;
+  private TiSession session;
+  private RegionManager mgr;
+  private ExecutorService executor;
+  private ScheduledExecutorService scheduler;
+  // keys of each batch sent
+  private final List<List<ByteString>> sent = new ArrayList<>();
+
+  @Before
+  public void setup() throws IOException {
+    server = new PDMockServer();
+    server.start(CLUSTER_ID);
+    server.addGetMemberResp(
+        GrpcUtils.makeGetMembersResponse(
+            server.getClusterId(),
+            GrpcUtils.makeMember(1, "http://" + LOCAL_ADDR + ":" + server.port)));
+    // a single region holds every key of the tests
+    server.addGetRegionResp(
+        GrpcUtils.makeGetRegionResponse(
+            server.getClusterId(),
+            GrpcUtils.makeRegion(
+                233,
+                GrpcUtils.encodeKey(new byte[] {1}),
+                GrpcUtils.encodeKey(new byte[] {100}),
+                GrpcUtils.makeRegionEpoch(1026, 1027),
+                GrpcUtils.makePeer(1, 10))));
+
+    TiConfiguration conf = TiConfiguration.createDefault("127.0.0.1:" + server.port);
+    session = TiSession.create(conf);
+    mgr = new RegionManager(session.getPDClient());
+    executor = Executors.newCachedThreadPool();
+    scheduler = RawExecutors.createScheduler();
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+    scheduler.shutdownNow();
+    server.stop();
+    session.close();
+  }
+
+  private RawPutBatcher newBatcher(long windowMs, long maxBytes) {
+    return new RawPutBatcher(
+        mgr,
+        executor,
+        scheduler,
+        (region, keys, values) -> {
+          synchronized (sent) {
+            sent.add(new ArrayList<>(keys));
+          }
+        },
+        windowMs,
+        maxBytes);
+  }
+
+  @Test
+  public void flushOnWindow() throws Exception {
+    RawPutBatcher batcher = newBatcher(50, 1024 * 1024);
+    List<CompletableFuture<Void>> futures = new ArrayList<>();
+    for (int i = 1; i <= 3; i++) {
+      futures.add(batcher.put(key(i), key(i)));
+    }
+    for (CompletableFuture<Void> future : futures) {
+      future.get(10, TimeUnit.SECONDS);
+    }
+    assertEquals(Arrays.asList(Arrays.asList(key(1), key(2), key(3))), sent);
+    batcher.close();
+  }
+
+  @Test
+  public void flushOnSize() throws Exception {
+    // two pairs of 2 bytes reach the limit, the window never ends within the test
+    RawPutBatcher batcher = newBatcher(TimeUnit.MINUTES.toMillis(10), 4);
+    CompletableFuture<Void> first = batcher.put(key(1), key(1));
+    CompletableFuture<Void> second = batcher.put(key(2), key(2));
+    second.get(10, TimeUnit.SECONDS);
+    assertTrue(first.isDone());
+    assertEquals(Arrays.asList(Arrays.asList(key(1), key(2))), sent);
+
+    // closing sends what is still gathering
+    CompletableFuture<Void> third = batcher.put(key(3), key(3));
+    assertFalse(third.isDone());
+    batcher.close();
+    assertTrue(third.isDone());
+    assertEquals(Arrays.asList(key(3)), sent.get(1));
+  }
+
+  @Test
+  public void errorReachesEveryCaller() throws Exception {
+    TiKVException error = new TiKVException("send failed");
+    RawPutBatcher batcher =
+        new RawPutBatcher(
+            mgr,
+            executor,
+            scheduler,
+            (region, keys, values) -> {
+              throw error;
+            },
+            50,
+            1024 * 1024);
+    List<CompletableFuture<Void>> futures = new ArrayList<>();
+    for (int i = 1; i <= 3; i++) {
+      futures.add(batcher.put(key(i), key(i)));
+    }
+    for (CompletableFuture<Void> future : futures) {
+      try {
+        future.get(10, TimeUnit.SECONDS);
+        fail();
+      } catch (ExecutionException e) {
+        assertSame(error, e.getCause());
+      }
+    }
+    batcher.close();
+  }
+
+  @Test(expected = TiKVException.class)
+  public void putAfterClose() {
+    RawPutBatcher batcher = newBatcher(50, 1024 * 1024);
+    batcher.close();
+    batcher.put(key(1), key(1));
+  }
+
+  private static ByteString key(int i) {
+    return ByteString.copyFrom(new byte[] {(byte) i});
+  }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2018 PingCAP, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tikv.raw;
+
+import static org.junit.Assert.*;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.protobuf.ByteString;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import org.tikv.common.FakePDClient;
+import org.tikv.common.GrpcUtils;
+import org.tikv.common.MockServerTest;
+import org.tikv.common.operation.iterator.CloseableIterator;
+import org.tikv.common.region.RegionManager;
+import org.tikv.common.region.RegionStoreClient.RegionStoreClientBuilder;
+import org.tikv.common.region.TiRegion;
+import org.tikv.kvproto.Kvrpcpb;
+import org.tikv.kvproto.Metapb;
+
+public class RawReverseScanTest extends MockServerTest {
+  // more keys per region than a scan batch, so that scans page within regions
+  private static final int KEYS_PER_PREFIX = 150;
+
+  private RawKVClient client;
+  // keys a000 to e149 of prefixes a, b, c and e, in ascending order
+  private List<ByteString> keys;
+
+  /** A client of regions [, b), [b, d), [d, e) and [e, ) led by the mock TiKV, none in [d, e) */
+  @Before
+  public void setUpClient() {
+    List<TiRegion> regions =
+        ImmutableList.of(
+            FakePDClient.makeRegion(1, ByteString.EMPTY, key("b"), 13),
+            FakePDClient.makeRegion(2, key("b"), key("d"), 13),
+            FakePDClient.makeRegion(3, key("d"), key("e"), 13),
+            FakePDClient.makeRegion(4, key("e"), ByteString.EMPTY, 13));
+    for (TiRegion region : regions) {
+      server.addRegion(region);
+    }
+    Metapb.Store store = GrpcUtils.makeStore(13, LOCAL_ADDR + ":" + port, Metapb.StoreState.Up);
+    FakePDClient pd = new FakePDClient(regions, ImmutableList.of(store));
+    client =
+        new RawKVClient(
+            session.getConf(),
+            new RegionStoreClientBuilder(
+                session.getConf(), session.getChannelFactory(), new RegionManager(pd)));
+
+    keys = new ArrayList<>();
+    for (String prefix : new String[] {"a", "b", "c", "e"}) {
+      for (int i = 0; i < KEYS_PER_PREFIX; i++) {
+        String key = String.format("%s%03d", prefix, i);
+        server.put(key, "v" + key);
+        keys.add(key(key));
+      }
+    }
+  }
+
+  private static ByteString key(String key) {
+    return ByteString.copyFromUtf8(key);
+  }
+
+  private static List<ByteString> keysOf(List<Kvrpcpb.KvPair> kvPairs) {
+    List<ByteString> keys = new ArrayList<>();
+    for (Kvrpcpb.KvPair kvPair : kvPairs) {
+      assertEquals(key("v" + kvPair.getKey().toStringUtf8()), kvPair.getValue());
+      keys.add(kvPair.getKey());
+    }
+    return keys;
+  }
+
+  /** keys in [from, to) in descending order */
+  private List<ByteString> descending(int from, int to) {
+    return Lists.reverse(keys.subList(from, to));
+  }
+
+  @Test
+  public void unboundedReverseScan() {
+    assertEquals(descending(0, 600), keysOf(client.reverseScan(ByteString.EMPTY, 1000)));
+    assertEquals(descending(480, 600), keysOf(client.reverseScan(ByteString.EMPTY, 120)));
+    assertEquals(
+        descending(100, 600),
+        keysOf(client.reverseScan(ByteString.EMPTY, key("a100"), Integer.MAX_VALUE)));
+    client.close();
+  }
+
+  @Test
+  public void boundedReverseScan() {
+    // from inside a region down to inside another one
+    assertEquals(descending(100, 350), keysOf(client.reverseScan(key("c050"), key("a100"), 1000)));
+    // from the empty region down, bounded by the limit
+    assertEquals(descending(230, 450), keysOf(client.reverseScan(key("d5"), key("a"), 220)));
+    assertTrue(client.reverseScan(key("e"), key("d"), 10).isEmpty());
+    client.close();
+  }
+
+  @Test
+  public void reverseScanIterator() {
+    List<ByteString> scanned = new ArrayList<>();
+    try (CloseableIterator<Kvrpcpb.KvPair> iterator =
+        client.reverseScanIterator(ByteString.EMPTY, key("b"), 1000)) {
+      iterator.forEachRemaining(kvPair -> scanned.add(kvPair.getKey()));
+    }
+    assertEquals(descending(150, 600), scanned);
+    client.close();
+  }
+}